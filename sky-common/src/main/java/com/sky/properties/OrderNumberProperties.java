@@ -0,0 +1,27 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-number")
+@Data
+public class OrderNumberProperties {
+
+    /**
+     * 当前节点的机器id(0~1023),小于0时启动时从redis自动分配
+     */
+    private long workerId = -1;
+
+    /**
+     * 起始时间戳(毫秒),上线后不能修改,默认2023-01-01 00:00:00
+     */
+    private long epoch = 1672502400000L;
+
+    /**
+     * 允许的最大时钟回拨(毫秒),超过时拒绝生成订单号
+     */
+    private long maxBackwardMillis = 10;
+
+}
@@ -0,0 +1,37 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-submit")
+@Data
+public class OrderSubmitProperties {
+
+    /**
+     * 是否开启批量提交:下单请求进入队列,由后台线程合并后在一个事务中写入
+     */
+    private boolean pipeline = false;
+
+    /**
+     * 每批最多合并的订单数
+     */
+    private int batchSize = 32;
+
+    /**
+     * 凑批的最长等待时间(毫秒)
+     */
+    private long maxWaitMillis = 5;
+
+    /**
+     * 等待写入的最大订单数,超过时拒绝下单
+     */
+    private int queueCapacity = 2048;
+
+    /**
+     * 等待订单写入的最长时间(毫秒),超时后未开始写入的订单不再写入,下单失败
+     */
+    private long submitTimeoutMillis = 5000;
+
+}
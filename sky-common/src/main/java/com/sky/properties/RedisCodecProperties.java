@@ -0,0 +1,17 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.redis-codec")
+@Data
+public class RedisCodecProperties {
+
+    /**
+     * redis缓存值的写入格式 smile / jdk,两种格式写入的数据都能读取
+     */
+    private String valueFormat = "smile";
+
+}
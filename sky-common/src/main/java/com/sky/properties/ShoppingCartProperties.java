@@ -0,0 +1,27 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.shopping-cart")
+@Data
+public class ShoppingCartProperties {
+
+    /**
+     * 购物车存储方式 redis / mysql
+     */
+    private String store = "mysql";
+
+    /**
+     * redis存储时,是否异步将购物车回写到shopping_cart表
+     */
+    private boolean writeBehind = false;
+
+    /**
+     * redis存储时购物车的过期时间(天)
+     */
+    private long ttlDays = 7;
+
+}
@@ -0,0 +1,36 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    /**
+     * 慢客户端处理策略:丢弃该客户端最早的待发送消息
+     */
+    public static final String DROP_OLDEST = "drop-oldest";
+    /**
+     * 慢客户端处理策略:关闭该客户端的连接,客户端重连后继续接收
+     */
+    public static final String EVICT = "evict";
+
+    /**
+     * 每个客户端最多缓存的待发送消息数
+     */
+    private int queueCapacity = 256;
+
+    /**
+     * 单条消息的发送超时时间(毫秒),超时的客户端会被关闭
+     */
+    private long sendTimeoutMillis = 10000;
+
+    /**
+     * 待发送消息超过queueCapacity时的处理策略:drop-oldest 或 evict
+     */
+    private String slowConsumerPolicy = EVICT;
+
+}
@@ -0,0 +1,93 @@
+package com.sky.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 雪花算法id生成器,生成的id按时间递增,多节点使用不同的机器id时不会重复
+ * 组成:41位毫秒时间戳(相对起始时间) + 10位机器id + 12位序列号
+ */
+@Slf4j
+public class SnowflakeIdGenerator {
+
+    // 机器id位数,最多1024个节点
+    public static final int WORKER_ID_BITS = 10;
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    // 每毫秒最多生成4096个id
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    // 起始时间戳
+    private final long epoch;
+    private final long workerId;
+    // 允许的最大时钟回拨毫秒数,回拨在该范围内时等待时钟追上,超过则抛出异常
+    private final long maxBackwardMillis;
+
+    private long lastTimestamp = -1L;
+    private long sequence = 0L;
+    // 机器id的有效期,自动分配的机器id由租约续期,过期后拒绝生成id,避免与接管该机器id的节点重复
+    private volatile long validUntil = Long.MAX_VALUE;
+
+    public SnowflakeIdGenerator(long epoch, long workerId, long maxBackwardMillis) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId must be between 0 and " + MAX_WORKER_ID);
+        }
+        this.epoch = epoch;
+        this.workerId = workerId;
+        this.maxBackwardMillis = maxBackwardMillis;
+    }
+
+    /**
+     * 生成下一个id
+     *
+     * @return
+     */
+    public synchronized long nextId() {
+        long timestamp = System.currentTimeMillis();
+        if (timestamp > validUntil) {
+            throw new IllegalStateException("机器id" + workerId + "已过期,拒绝生成id");
+        }
+        if (timestamp < lastTimestamp) {
+            long offset = lastTimestamp - timestamp;
+            if (offset > maxBackwardMillis) {
+                throw new IllegalStateException("时钟回拨" + offset + "毫秒,拒绝生成id");
+            }
+            log.warn("时钟回拨{}毫秒,等待时钟追上", offset);
+            timestamp = waitUntil(lastTimestamp);
+        }
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // 当前毫秒的序列号用完,等到下一毫秒
+                timestamp = waitUntil(lastTimestamp + 1);
+            }
+        } else {
+            sequence = 0L;
+        }
+        lastTimestamp = timestamp;
+        return ((timestamp - epoch) << (WORKER_ID_BITS + SEQUENCE_BITS))
+                | (workerId << SEQUENCE_BITS)
+                | sequence;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 设置机器id的有效期
+     *
+     * @param validUntil 毫秒时间戳,之后生成id时抛出异常
+     */
+    public void setValidUntil(long validUntil) {
+        this.validUntil = validUntil;
+    }
+
+    private long waitUntil(long target) {
+        long timestamp = System.currentTimeMillis();
+        while (timestamp < target) {
+            Thread.yield();
+            timestamp = System.currentTimeMillis();
+        }
+        return timestamp;
+    }
+}
@@ -0,0 +1,45 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DailyStatsDTO implements Serializable {
+    //日期
+    private LocalDate date;
+
+    //营业额
+    private Double turnover;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数
+    private Integer validOrderCount;
+
+    //已取消订单数
+    private Integer cancelledOrderCount;
+
+    //待付款订单数
+    private Integer pendingPaymentCount;
+
+    //待接单订单数
+    private Integer toBeConfirmedCount;
+
+    //已接单订单数
+    private Integer confirmedCount;
+
+    //派送中订单数
+    private Integer deliveryInProgressCount;
+
+    //新增用户数
+    private Integer newUsers;
+}
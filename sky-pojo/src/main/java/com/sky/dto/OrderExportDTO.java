@@ -0,0 +1,62 @@
+package com.sky.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单导出的一行:订单信息 + 一条订单明细
+ */
+@Data
+public class OrderExportDTO implements Serializable {
+
+    //订单id
+    private Long id;
+
+    //订单号
+    private String number;
+
+    //订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+    private Integer status;
+
+    //下单用户id
+    private Long userId;
+
+    //下单时间
+    private LocalDateTime orderTime;
+
+    //结账时间
+    private LocalDateTime checkoutTime;
+
+    //支付状态 0未支付 1已支付 2退款
+    private Integer payStatus;
+
+    //实收金额
+    private BigDecimal amount;
+
+    //收货人
+    private String consignee;
+
+    //手机号
+    private String phone;
+
+    //地址
+    private String address;
+
+    //备注
+    private String remark;
+
+    //菜品或套餐名称
+    private String itemName;
+
+    //口味
+    private String dishFlavor;
+
+    //数量
+    private Integer itemNumber;
+
+    //金额
+    private BigDecimal itemAmount;
+}
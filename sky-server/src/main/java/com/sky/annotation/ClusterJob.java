@@ -0,0 +1,20 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自定义注解,用于标识集群中同一时刻只允许一个节点执行的定时任务
+ * 执行前需要获取任务租约,持有租约的节点在租约有效期内连续执行,租约过期后由其它节点接管
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ClusterJob {
+    //任务名称,默认为 类名.方法名
+    String value() default "";
+
+    //租约有效期(秒),应大于任务单次执行时间
+    long leaseSeconds() default 60;
+}
@@ -0,0 +1,130 @@
+package com.sky.aspect;
+
+import com.sky.annotation.ClusterJob;
+import com.sky.mapper.JobFenceMapper;
+import com.sky.task.JobFence;
+import com.sky.task.JobLease;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 自定义切面,集群定时任务只在持有租约的节点上执行,并统计每个任务的执行情况
+ * 执行期间通过JobFence.current()提供本次持有的令牌,供修改数据的语句校验
+ */
+@Aspect
+@Component
+@Slf4j
+public class ClusterJobAspect {
+
+    @Autowired
+    private JobLease jobLease;
+    @Autowired
+    private JobFenceMapper jobFenceMapper;
+
+    // 任务名称 -> 执行统计
+    private final ConcurrentHashMap<String, JobStats> stats = new ConcurrentHashMap<>();
+    // 本节点持有的租约令牌
+    private final ConcurrentHashMap<String, Long> tokens = new ConcurrentHashMap<>();
+
+    @Around("@annotation(clusterJob)")
+    public Object around(ProceedingJoinPoint joinPoint, ClusterJob clusterJob) throws Throwable {
+        String job = clusterJob.value();
+        if (job.isEmpty()) {
+            MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+            job = signature.getDeclaringType().getSimpleName() + "." + signature.getName();
+        }
+        JobStats jobStats = stats.computeIfAbsent(job, k -> new JobStats());
+
+        long token = jobLease.acquire(job, clusterJob.leaseSeconds());
+        if (token == 0) {
+            // 其它节点持有租约,本节点跳过
+            jobStats.skipped.incrementAndGet();
+            log.debug("任务{}由其它节点执行,跳过", job);
+            return null;
+        }
+        Long previous = tokens.get(job);
+        if (previous == null || previous != token) {
+            log.info("节点{}获得任务{}的租约,令牌:{}", jobLease.getNodeId(), job, token);
+            try {
+                // 先提升数据库中的令牌,之后持有旧令牌的节点无法再修改数据
+                jobFenceMapper.raise(job, token);
+            } catch (RuntimeException e) {
+                // 令牌未提升时本次不执行,下次触发时重试
+                jobStats.failed.incrementAndGet();
+                throw e;
+            }
+            tokens.put(job, token);
+        }
+
+        long start = System.currentTimeMillis();
+        JobFence.set(new JobFence(job, token));
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            jobStats.failed.incrementAndGet();
+            throw e;
+        } finally {
+            JobFence.clear();
+            long duration = System.currentTimeMillis() - start;
+            jobStats.record(duration);
+            log.info("任务{}执行完成,耗时{}ms", job, duration);
+        }
+    }
+
+    /**
+     * 各任务的执行统计
+     *
+     * @return
+     */
+    public Map<String, Map<String, Long>> stats() {
+        Map<String, Map<String, Long>> map = new LinkedHashMap<>();
+        stats.forEach((job, s) -> map.put(job, s.toMap()));
+        return map;
+    }
+
+    /**
+     * 节点停止时释放持有的租约,其它节点下次触发时即可接管
+     */
+    @PreDestroy
+    public void releaseAll() {
+        tokens.forEach(jobLease::release);
+    }
+
+    private static class JobStats {
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+        private volatile long lastMillis;
+
+        void record(long duration) {
+            runs.incrementAndGet();
+            totalMillis.addAndGet(duration);
+            maxMillis.accumulateAndGet(duration, Math::max);
+            lastMillis = duration;
+        }
+
+        Map<String, Long> toMap() {
+            Map<String, Long> map = new LinkedHashMap<>();
+            map.put("runs", runs.get());
+            map.put("skipped", skipped.get());
+            map.put("failed", failed.get());
+            map.put("totalMillis", totalMillis.get());
+            map.put("maxMillis", maxMillis.get());
+            map.put("lastMillis", lastMillis);
+            return map;
+        }
+    }
+}
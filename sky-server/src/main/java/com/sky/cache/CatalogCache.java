@@ -0,0 +1,200 @@
+package com.sky.cache;
+
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.SetmealDish;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealDishMapper;
+import com.sky.mapper.SetmealMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 菜品、套餐信息缓存,按id缓存在本节点,未命中时查询数据库
+ * 菜品或套餐被修改时,事务提交后通过redis发布订阅通知所有节点清理
+ * 清理消息可能丢失,条目写入一段时间后过期,作为兜底
+ */
+@Component
+@Slf4j
+public class CatalogCache implements MessageListener {
+
+    // 清理缓存的消息频道
+    public static final String EVICT_CHANNEL = "catalog_evict";
+    // 缓存key前缀:d菜品id,s套餐id
+    private static final String DISH = "d";
+    private static final String SETMEAL = "s";
+    // 条目写入后的存活时间
+    private static final long TTL_MILLIS = 5 * 60 * 1000L;
+    // 最多缓存的条目数
+    private static final int MAX_SIZE = 10000;
+
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private SetmealDishMapper setmealDishMapper;
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    // 菜单规模有限,全部缓存在本地
+    private final ConcurrentHashMap<String, Entry> items = new ConcurrentHashMap<>();
+    // 清理次数,查询数据库期间发生过清理时,查询结果不写入缓存
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * 根据id查询菜品信息
+     *
+     * @param dishId
+     * @return 菜品不存在时返回null
+     */
+    public CatalogItem getDish(Long dishId) {
+        CatalogItem item = getLocal(DISH + dishId);
+        if (item != null) {
+            return item;
+        }
+        long gen = generation.get();
+        Dish dish = dishMapper.getById(dishId);
+        if (dish == null) {
+            return null;
+        }
+        item = new CatalogItem(dish.getId(), dish.getName(), dish.getImage(), dish.getPrice(),
+                dish.getDescription(), dish.getStatus(), Collections.emptyList());
+        putLocal(DISH + dishId, item, gen);
+        return item;
+    }
+
+    /**
+     * 根据id查询套餐信息及包含的菜品
+     *
+     * @param setmealId
+     * @return 套餐不存在时返回null
+     */
+    public CatalogItem getSetmeal(Long setmealId) {
+        CatalogItem item = getLocal(SETMEAL + setmealId);
+        if (item != null) {
+            return item;
+        }
+        long gen = generation.get();
+        Setmeal setmeal = setmealMapper.getById(setmealId);
+        if (setmeal == null) {
+            return null;
+        }
+        List<SetmealDish> setmealDishes = setmealDishMapper.getBySetmealId(setmealId);
+        List<CatalogItem.SetmealItem> setmealItems = setmealDishes.stream()
+                .map(sd -> new CatalogItem.SetmealItem(sd.getDishId(), sd.getName(), sd.getCopies()))
+                .collect(Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList));
+        item = new CatalogItem(setmeal.getId(), setmeal.getName(), setmeal.getImage(), setmeal.getPrice(),
+                setmeal.getDescription(), setmeal.getStatus(), setmealItems);
+        putLocal(SETMEAL + setmealId, item, gen);
+        return item;
+    }
+
+    /**
+     * 清理菜品缓存,在事务中调用时等事务提交后再清理
+     *
+     * @param dishIds
+     */
+    public void evictDishes(List<Long> dishIds) {
+        afterCommit(() -> dishIds.forEach(id -> evict(DISH + id)));
+    }
+
+    /**
+     * 清理套餐缓存,在事务中调用时等事务提交后再清理
+     *
+     * @param setmealIds
+     */
+    public void evictSetmeals(List<Long> setmealIds) {
+        afterCommit(() -> setmealIds.forEach(id -> evict(SETMEAL + id)));
+    }
+
+    /**
+     * 收到其它节点的清理消息,清理本节点缓存
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = String.valueOf(redisTemplate.getValueSerializer().deserialize(message.getBody()));
+        removeLocal(key);
+    }
+
+    /**
+     * 事务提交前清理的话,其它线程可能在提交前又把旧数据读入缓存
+     *
+     * @param eviction
+     */
+    private void afterCommit(Runnable eviction) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eviction.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                eviction.run();
+            }
+        });
+    }
+
+    private void evict(String key) {
+        removeLocal(key);
+        redisTemplate.convertAndSend(EVICT_CHANNEL, key);
+    }
+
+    private CatalogItem getLocal(String key) {
+        Entry entry = items.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt < System.currentTimeMillis()) {
+            items.remove(key, entry);
+            return null;
+        }
+        return entry.item;
+    }
+
+    private void putLocal(String key, CatalogItem item, long gen) {
+        long now = System.currentTimeMillis();
+        if (items.size() >= MAX_SIZE) {
+            items.values().removeIf(e -> e.expireAt < now);
+            if (items.size() >= MAX_SIZE) {
+                // 超出容量,全部清空后重新加载
+                items.clear();
+            }
+        }
+        items.put(key, new Entry(item, now + TTL_MILLIS));
+        // 查询期间发生过清理,查到的可能是旧数据
+        if (generation.get() != gen) {
+            items.remove(key);
+        }
+    }
+
+    private void removeLocal(String key) {
+        generation.incrementAndGet();
+        items.remove(key);
+    }
+
+    private static class Entry {
+        private final CatalogItem item;
+        private final long expireAt;
+
+        Entry(CatalogItem item, long expireAt) {
+            this.item = item;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.sky.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 菜品或套餐的只读信息,供购物车、再来一单、套餐菜品查询使用
+ */
+@Getter
+@AllArgsConstructor
+public final class CatalogItem {
+
+    private final Long id;
+
+    //名称
+    private final String name;
+
+    //图片
+    private final String image;
+
+    //价格
+    private final BigDecimal price;
+
+    //描述信息
+    private final String description;
+
+    //0 停售 1 起售
+    private final Integer status;
+
+    //套餐包含的菜品,菜品为空集合
+    private final List<SetmealItem> items;
+
+    /**
+     * 套餐中的一个菜品
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class SetmealItem {
+
+        //菜品id
+        private final Long dishId;
+
+        //菜品名称
+        private final String name;
+
+        //份数
+        private final Integer copies;
+    }
+}
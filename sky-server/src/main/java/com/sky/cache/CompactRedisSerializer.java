@@ -0,0 +1,89 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+
+/**
+ * redis值序列化器,使用Smile二进制格式,比jdk序列化体积更小、速度更快,且不依赖类的serialVersionUID
+ * 读取时根据数据头自动识别格式,兼容切换前以jdk序列化写入的旧数据
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 写入格式:smile 使用Smile格式写入;jdk 仍使用jdk序列化写入(用于回滚),两种模式都能读取两种格式
+     */
+    public static final String SMILE = "smile";
+    public static final String JDK = "jdk";
+
+    // jdk序列化数据的魔数 0xACED
+    private static final byte JDK_MAGIC_0 = (byte) 0xAC;
+    private static final byte JDK_MAGIC_1 = (byte) 0xED;
+
+    private final ObjectMapper smileMapper;
+    private final JdkSerializationRedisSerializer jdkSerializer;
+    private final boolean writeSmile;
+
+    public CompactRedisSerializer(String writeFormat, ClassLoader classLoader) {
+        this.writeSmile = !JDK.equalsIgnoreCase(writeFormat);
+        this.jdkSerializer = new JdkSerializationRedisSerializer(classLoader);
+
+        // 类型信息以字符串写在每个对象上,开启重复字符串引用,同一类名只写一次
+        SmileFactory smileFactory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        ObjectMapper mapper = new ObjectMapper(smileFactory);
+        mapper.registerModule(new JavaTimeModule());
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        // 写入类型信息,读取时还原为原来的对象类型;只允许项目和jdk中的类型
+        BasicPolymorphicTypeValidator validator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType("com.sky.")
+                .allowIfSubType("java.util.")
+                .allowIfSubType("java.time.")
+                .allowIfSubType("java.math.")
+                .allowIfSubType("java.lang.")
+                .build();
+        mapper.activateDefaultTyping(validator, ObjectMapper.DefaultTyping.EVERYTHING, JsonTypeInfo.As.PROPERTY);
+        this.smileMapper = mapper;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (!writeSmile) {
+            return jdkSerializer.serialize(value);
+        }
+        try {
+            return smileMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Could not write Smile: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        // 切换前写入的jdk序列化数据
+        if (bytes.length > 1 && bytes[0] == JDK_MAGIC_0 && bytes[1] == JDK_MAGIC_1) {
+            return jdkSerializer.deserialize(bytes);
+        }
+        try {
+            return smileMapper.readValue(bytes, Object.class);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read Smile: " + e.getMessage(), e);
+        }
+    }
+}
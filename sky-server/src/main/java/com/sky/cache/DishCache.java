@@ -0,0 +1,337 @@
+package com.sky.cache;
+
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 菜品缓存:进程内一级缓存 + redis二级缓存
+ * 一级缓存按菜品条数限制容量,通过redis发布订阅在各节点间同步清理
+ * redis中每个分类有一个代数,缓存key带有分类的代数,清理分类时只需递增代数,旧代数的key依靠过期时间自动删除
+ */
+@Component
+@Slf4j
+public class DishCache implements MessageListener {
+
+    // redis中的key前缀,规则:dish_{分类id}_代数
+    public static final String DISH = "dish_";
+    // 分类缓存代数的key前缀,规则:dish_version_{分类id},与缓存key在同一个slot
+    public static final String DISH_VERSION = "dish_version_";
+    // redis中菜品缓存的过期时间
+    private static final long DISH_TTL_MINUTES = 60;
+    // 分类下没有菜品时,空结果的缓存时间
+    private static final long EMPTY_TTL_SECONDS = 30;
+    // 清理一级缓存的消息频道
+    public static final String EVICT_CHANNEL = "dish_cache_evict";
+    // 清理消息中分类id的分隔符
+    private static final String SEPARATOR = ",";
+    // 一级缓存最多容纳的菜品条数
+    private static final int L1_MAX_WEIGHT = 2000;
+    // 一级缓存条目存活时间,防止漏收清理消息后长期读到旧数据
+    private static final long L1_TTL_MILLIS = 60 * 1000L;
+
+    /**
+     * 读取分类当前代数的缓存,一次往返完成
+     * KEYS: 分类代数  ARGV: 缓存key前缀 dish_{分类id}_
+     */
+    private static final DefaultRedisScript<Object> READ_SCRIPT = new DefaultRedisScript<>(
+            "local generation = redis.call('GET', KEYS[1]) or '0' " +
+            "return redis.call('GET', ARGV[1] .. generation)", Object.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 一级缓存,按访问顺序排列,超出容量时淘汰最久未访问的分类
+    private final LinkedHashMap<Long, L1Entry> l1 = new LinkedHashMap<>(16, 0.75f, true);
+    // 一级缓存中当前的菜品总条数
+    private int l1Weight;
+    // 一级缓存每次清理时递增,加载期间发生过清理的结果不放入一级缓存
+    private long l1Generation;
+
+    // 正在加载中的分类,保证同一分类同时只有一次加载
+    private final ConcurrentHashMap<String, CompletableFuture<List<DishVO>>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong l1Hit = new AtomicLong();
+    private final AtomicLong l1Miss = new AtomicLong();
+    private final AtomicLong l2Hit = new AtomicLong();
+    private final AtomicLong l2Miss = new AtomicLong();
+
+    /**
+     * 查询分类下的菜品,依次查询一级缓存、redis、数据库
+     * 同一节点上同一分类同时只有一个线程查询redis和数据库,其余线程等待其结果
+     *
+     * @param categoryId
+     * @param loader     缓存都未命中时查询数据库
+     * @return
+     */
+    public List<DishVO> get(Long categoryId, Supplier<List<DishVO>> loader) {
+        List<DishVO> list = getLocal(categoryId);
+        if (list != null) {
+            l1Hit.incrementAndGet();
+            return list;
+        }
+        l1Miss.incrementAndGet();
+
+        String flightKey = String.valueOf(categoryId);
+        CompletableFuture<List<DishVO>> future = new CompletableFuture<>();
+        CompletableFuture<List<DishVO>> inFlight = loading.putIfAbsent(flightKey, future);
+        if (inFlight != null) {
+            // 已有线程在加载该分类,等待其结果
+            return await(inFlight);
+        }
+        try {
+            future.complete(load(categoryId, loader));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            loading.remove(flightKey, future);
+        }
+        return await(future);
+    }
+
+    /**
+     * 查询redis,未命中时查询数据库并写回缓存
+     *
+     * @param categoryId
+     * @param loader
+     * @return
+     */
+    private List<DishVO> load(Long categoryId, Supplier<List<DishVO>> loader) {
+        // 上一次加载可能刚刚完成,再检查一次一级缓存
+        List<DishVO> list = getLocal(categoryId);
+        if (list != null) {
+            return list;
+        }
+        long localGeneration = localGeneration();
+        // 空集合也是有效的缓存结果,避免没有菜品的分类每次都查询数据库
+        list = readCurrent(categoryId);
+        if (list != null) {
+            l2Hit.incrementAndGet();
+            putLocal(categoryId, list, localGeneration);
+            return list;
+        }
+        l2Miss.incrementAndGet();
+
+        // 先读取代数再查询数据库,查询期间分类被清理时,结果写入旧代数的key,不会被读到
+        String generation = stringRedisTemplate.opsForValue().get(DISH_VERSION + tag(categoryId));
+        list = loader.get();
+        write(buildKey(categoryId, generation == null ? "0" : generation), list);
+        putLocal(categoryId, list, localGeneration);
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<DishVO> readCurrent(Long categoryId) {
+        return (List<DishVO>) redisTemplate.execute(READ_SCRIPT, StringRedisSerializer.UTF_8,
+                redisTemplate.getValueSerializer(),
+                Collections.singletonList(DISH_VERSION + tag(categoryId)), DISH + tag(categoryId) + "_");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write(String key, List<DishVO> list) {
+        redisTemplate.opsForValue().set(key, list, ttlSeconds(list), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 计算缓存过期时间,空结果只缓存较短时间,并加入随机偏移避免大量key同时过期
+     *
+     * @param list
+     * @return
+     */
+    private long ttlSeconds(List<DishVO> list) {
+        long base = list.isEmpty() ? EMPTY_TTL_SECONDS : DISH_TTL_MINUTES * 60;
+        return base + ThreadLocalRandom.current().nextLong(base / 5 + 1);
+    }
+
+    private List<DishVO> await(CompletableFuture<List<DishVO>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 清理指定分类的缓存
+     *
+     * @param categoryId
+     */
+    public void evict(Long categoryId) {
+        evict(Collections.singletonList(categoryId));
+    }
+
+    /**
+     * 清理多个分类的缓存
+     * 递增分类的代数使其旧key失效,无需扫描redis中的key,其它分类的缓存不受影响
+     *
+     * @param categoryIds
+     */
+    public void evict(Collection<Long> categoryIds) {
+        Set<Long> distinct = new LinkedHashSet<>(categoryIds);
+        if (distinct.isEmpty()) {
+            return;
+        }
+        for (Long categoryId : distinct) {
+            stringRedisTemplate.opsForValue().increment(DISH_VERSION + tag(categoryId));
+        }
+        publish(distinct.stream().map(String::valueOf).collect(Collectors.joining(SEPARATOR)));
+    }
+
+    /**
+     * 各缓存层的命中统计
+     *
+     * @return
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        map.put("l1Hit", l1Hit.get());
+        map.put("l1Miss", l1Miss.get());
+        map.put("l2Hit", l2Hit.get());
+        map.put("l2Miss", l2Miss.get());
+        synchronized (l1) {
+            map.put("l1Size", (long) l1.size());
+            map.put("l1Weight", (long) l1Weight);
+        }
+        return map;
+    }
+
+    /**
+     * 收到清理消息,清理本节点的一级缓存
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = String.valueOf(redisTemplate.getValueSerializer().deserialize(message.getBody()));
+        log.info("清理本地菜品缓存:{}", body);
+        clearLocal(body);
+    }
+
+    /**
+     * 构造redis中的key,规则:dish_{分类id}_代数
+     *
+     * @param categoryId
+     * @param generation
+     * @return
+     */
+    private String buildKey(Long categoryId, String generation) {
+        return DISH + tag(categoryId) + "_" + generation;
+    }
+
+    /**
+     * 分类id作为hash tag,分类的代数和缓存在同一个slot,读取脚本可以在集群中执行
+     *
+     * @param categoryId
+     * @return
+     */
+    private static String tag(Long categoryId) {
+        return "{" + categoryId + "}";
+    }
+
+    private void publish(String body) {
+        // 本节点也会收到该消息,这里先清理一次,避免消息到达前读到旧数据
+        clearLocal(body);
+        redisTemplate.convertAndSend(EVICT_CHANNEL, body);
+    }
+
+    private void clearLocal(String body) {
+        synchronized (l1) {
+            l1Generation++;
+            for (String categoryId : body.split(SEPARATOR)) {
+                removeLocal("null".equals(categoryId) ? null : Long.valueOf(categoryId));
+            }
+        }
+    }
+
+    private long localGeneration() {
+        synchronized (l1) {
+            return l1Generation;
+        }
+    }
+
+    private List<DishVO> getLocal(Long categoryId) {
+        synchronized (l1) {
+            L1Entry entry = l1.get(categoryId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt < System.currentTimeMillis()) {
+                removeLocal(categoryId);
+                return null;
+            }
+            return entry.list;
+        }
+    }
+
+    private void putLocal(Long categoryId, List<DishVO> list, long localGeneration) {
+        int weight = Math.max(1, list.size());
+        if (weight > L1_MAX_WEIGHT) {
+            return;
+        }
+        synchronized (l1) {
+            if (l1Generation != localGeneration) {
+                // 加载期间收到过清理消息,结果可能是旧数据
+                return;
+            }
+            removeLocal(categoryId);
+            // 空集合在一级缓存中不能比redis中存活得更久,否则分类新增菜品后仍可能长时间读到空结果
+            long ttlMillis = list.isEmpty() ? TimeUnit.SECONDS.toMillis(EMPTY_TTL_SECONDS) : L1_TTL_MILLIS;
+            l1.put(categoryId, new L1Entry(list, System.currentTimeMillis() + ttlMillis));
+            l1Weight += weight;
+            // 超出容量,从最久未访问的分类开始淘汰
+            Iterator<Map.Entry<Long, L1Entry>> iterator = l1.entrySet().iterator();
+            while (l1Weight > L1_MAX_WEIGHT && iterator.hasNext()) {
+                L1Entry eldest = iterator.next().getValue();
+                l1Weight -= Math.max(1, eldest.list.size());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void removeLocal(Long categoryId) {
+        L1Entry entry = l1.remove(categoryId);
+        if (entry != null) {
+            l1Weight -= Math.max(1, entry.list.size());
+        }
+    }
+
+    private static class L1Entry {
+        private final List<DishVO> list;
+        private final long expireAt;
+
+        L1Entry(List<DishVO> list, long expireAt) {
+            this.list = list;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.sky.cache;
+
+import com.sky.json.JacksonObjectMapper;
+import com.sky.result.Result;
+import com.sky.service.MenuService;
+import com.sky.vo.MenuCategoryVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 完整菜单快照:菜单序列化为json字节后缓存在本节点,菜单数据被修改时才重新生成
+ * 修改菜单的节点通过redis发布订阅通知其它节点丢弃快照
+ */
+@Component
+@Slf4j
+public class MenuSnapshotCache implements MessageListener {
+
+    // 丢弃菜单快照的消息频道
+    public static final String EVICT_CHANNEL = "menu_snapshot_evict";
+
+    @Autowired
+    private MenuService menuService;
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    // 当前快照,为空表示需要重新生成
+    private volatile Snapshot snapshot;
+    // 快照失效次数,用于丢弃生成过程中已经失效的快照
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * 获取当前菜单快照,不存在时重新生成
+     *
+     * @return
+     */
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot != null) {
+                return snapshot;
+            }
+            long gen = generation.get();
+            Snapshot built = build();
+            // 生成期间菜单被修改过,本次结果只返回给当前请求,不缓存
+            if (gen == generation.get()) {
+                snapshot = built;
+            }
+            return built;
+        }
+    }
+
+    /**
+     * 菜单数据被修改,丢弃所有节点的快照
+     */
+    public void invalidate() {
+        invalidateLocal();
+        redisTemplate.convertAndSend(EVICT_CHANNEL, "menu");
+    }
+
+    /**
+     * 收到其它节点的通知,丢弃本节点的快照
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        log.info("丢弃本地菜单快照");
+        invalidateLocal();
+    }
+
+    private void invalidateLocal() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    private Snapshot build() {
+        log.info("生成菜单快照...");
+        List<MenuCategoryVO> menu = menuService.listMenu();
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(Result.success(menu));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(json);
+            }
+            String digest = DigestUtils.md5DigestAsHex(json);
+            return new Snapshot(json, out.toByteArray(), "\"" + digest + "\"", "\"" + digest + "-gz\"");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 菜单快照,包含原始json、gzip压缩后的json以及各自的ETag
+     * 两种内容的字节不同,强ETag不能相同,gzip内容的ETag带-gz后缀
+     */
+    public static class Snapshot {
+        private final byte[] json;
+        private final byte[] gzip;
+        private final String etag;
+        private final String gzipEtag;
+
+        Snapshot(byte[] json, byte[] gzip, String etag, String gzipEtag) {
+            this.json = json;
+            this.gzip = gzip;
+            this.etag = etag;
+            this.gzipEtag = gzipEtag;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getGzipEtag() {
+            return gzipEtag;
+        }
+    }
+}
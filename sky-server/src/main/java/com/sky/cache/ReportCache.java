@@ -0,0 +1,110 @@
+package com.sky.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * 报表按天缓存:每天的统计结果单独缓存,查询任意日期区间时只统计缓存中缺少的日期
+ * 已结束日期的数据不再变化,永久缓存;当天的数据只缓存较短时间
+ */
+@Component
+@Slf4j
+public class ReportCache {
+
+    // 每日营业数据的key前缀,规则:report_stats_日期
+    public static final String STATS = "report_stats_";
+    // 当天数据的缓存时间
+    private static final long TODAY_TTL_SECONDS = 60;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    /**
+     * 查询日期区间内每天的统计结果
+     *
+     * @param prefix key前缀
+     * @param begin
+     * @param end
+     * @param loader 统计连续日期区间,每天返回一条,按日期排序
+     * @return begin到end每天一条,按日期排序
+     */
+    public <T> List<T> getDays(String prefix, LocalDate begin, LocalDate end,
+                               BiFunction<LocalDate, LocalDate, List<T>> loader) {
+        List<String> keys = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            keys.add(prefix + date);
+        }
+        List<T> days = new ArrayList<>(multiGet(keys));
+
+        // 把缺少的日期按连续区间分组统计
+        LocalDate missingBegin = null;
+        LocalDate date = begin;
+        for (int i = 0; i <= keys.size(); i++, date = date.plusDays(1)) {
+            boolean missing = i < keys.size() && days.get(i) == null;
+            if (missing && missingBegin == null) {
+                missingBegin = date;
+            } else if (!missing && missingBegin != null) {
+                LocalDate missingEnd = date.minusDays(1);
+                List<T> loaded = loader.apply(missingBegin, missingEnd);
+                int offset = (int) (missingBegin.toEpochDay() - begin.toEpochDay());
+                for (int j = 0; j < loaded.size(); j++) {
+                    days.set(offset + j, loaded.get(j));
+                    put(prefix, missingBegin.plusDays(j), loaded.get(j));
+                }
+                missingBegin = null;
+            }
+        }
+        return days;
+    }
+
+    /**
+     * 日期区间内的数据被重新统计,清理缓存
+     *
+     * @param begin
+     * @param end
+     */
+    public void evict(LocalDate begin, LocalDate end) {
+        List<String> keys = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            keys.add(STATS + date);
+        }
+        template().delete(keys);
+    }
+
+    private void put(String prefix, LocalDate date, Object value) {
+        if (date.isBefore(LocalDate.now())) {
+            template().opsForValue().set(prefix + date, value);
+        } else {
+            template().opsForValue().set(prefix + date, value, TODAY_TTL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 批量读取缓存,同一前缀下的值都由同一个loader写入,类型都是T
+     *
+     * @param keys
+     * @return 与keys一一对应,不存在的为null
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> multiGet(List<String> keys) {
+        return (List<T>) template().opsForValue().multiGet(keys);
+    }
+
+    /**
+     * redisTemplate的key为字符串,value可以是任意对象
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private RedisTemplate<String, Object> template() {
+        return redisTemplate;
+    }
+}
@@ -0,0 +1,200 @@
+package com.sky.cache;
+
+import com.sky.dto.DailyGoodsSalesDTO;
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.OrderDetail;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 商品销量排行:每天一个redis有序集合,成员为商品名称,分数为当天已完成订单中的销量
+ * 订单完成时累加,未加载的日期从数据库统计一次;任意日期区间的排行由每天的集合合并得到
+ */
+@Component
+@Slf4j
+public class SalesRanking {
+
+    // 每日销量的key前缀,规则:sales_日期
+    private static final String SALES = "sales_";
+    // 标记某天的销量已从数据库加载,规则:sales_loaded_日期
+    private static final String LOADED = "sales_loaded_";
+    // 当天的加载标记有效期,过期后重新从数据库统计,修正并发时可能遗漏的累加
+    private static final long TODAY_LOADED_MINUTES = 10;
+    // 热销商品统计最近的天数
+    private static final int HOT_DAYS = 7;
+    // 热销商品数量
+    private static final int HOT_SIZE = 10;
+
+    /**
+     * 累加销量,当天未加载时不累加,等待下次从数据库统计
+     * KEYS: 销量集合, 加载标记  ARGV: 商品名称, 数量, 商品名称, 数量...
+     */
+    private static final DefaultRedisScript<Long> INCR_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[2]) == 0 then return 0 end " +
+            "for i = 1, #ARGV, 2 do redis.call('ZINCRBY', KEYS[1], ARGV[i + 1], ARGV[i]) end " +
+            "return 1", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+
+    // 最近几天的热销商品名称,定时刷新
+    private volatile List<String> hotDishes = Collections.emptyList();
+
+    /**
+     * 订单完成,累加订单所在日期的销量
+     *
+     * @param orderTime 下单时间
+     * @param orderDetails
+     */
+    public void onCompleted(LocalDateTime orderTime, List<OrderDetail> orderDetails) {
+        if (orderDetails.isEmpty()) {
+            return;
+        }
+        LocalDate date = orderTime.toLocalDate();
+        List<String> args = new ArrayList<>();
+        for (OrderDetail orderDetail : orderDetails) {
+            args.add(orderDetail.getName());
+            args.add(String.valueOf(orderDetail.getNumber()));
+        }
+        stringRedisTemplate.execute(INCR_SCRIPT, Arrays.asList(SALES + date, LOADED + date), args.toArray());
+    }
+
+    /**
+     * 查询日期区间内销量前n的商品
+     *
+     * @param begin
+     * @param end
+     * @param n
+     * @return
+     */
+    public List<GoodsSalesDTO> top(LocalDate begin, LocalDate end, int n) {
+        List<String> keys = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            keys.add(SALES + date);
+        }
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ensureLoaded(begin, end);
+
+        // 合并每天的销量到临时集合
+        String tmp = "sales_tmp_" + UUID.randomUUID();
+        Set<ZSetOperations.TypedTuple<String>> tuples;
+        try {
+            stringRedisTemplate.opsForZSet().unionAndStore(keys.get(0), keys.subList(1, keys.size()), tmp);
+            tuples = stringRedisTemplate.opsForZSet().reverseRangeWithScores(tmp, 0, n - 1);
+        } finally {
+            stringRedisTemplate.delete(tmp);
+        }
+        List<GoodsSalesDTO> list = new ArrayList<>();
+        if (tuples != null) {
+            tuples.forEach(t -> list.add(new GoodsSalesDTO(t.getValue(), t.getScore().intValue())));
+        }
+        return list;
+    }
+
+    /**
+     * 最近几天的热销商品名称,直接返回内存中的结果
+     *
+     * @return
+     */
+    public List<String> getHotDishes() {
+        return hotDishes;
+    }
+
+    /**
+     * 每5分钟刷新一次热销商品
+     */
+    @Scheduled(fixedDelay = 300000, initialDelay = 10000)
+    public void refreshHotDishes() {
+        LocalDate today = LocalDate.now();
+        hotDishes = top(today.minusDays(HOT_DAYS - 1), today, HOT_SIZE).stream()
+                .map(GoodsSalesDTO::getName)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 日期区间内的订单被重新统计,下次查询时重新加载
+     *
+     * @param begin
+     * @param end
+     */
+    public void evict(LocalDate begin, LocalDate end) {
+        List<String> keys = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            keys.add(LOADED + date);
+        }
+        stringRedisTemplate.delete(keys);
+    }
+
+    /**
+     * 从数据库统计尚未加载的日期,连续的日期一次查询
+     *
+     * @param begin
+     * @param end
+     */
+    private void ensureLoaded(LocalDate begin, LocalDate end) {
+        List<String> markers = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            markers.add(LOADED + date);
+        }
+        List<String> loaded = stringRedisTemplate.opsForValue().multiGet(markers);
+
+        LocalDate missingBegin = null;
+        LocalDate date = begin;
+        for (int i = 0; i <= markers.size(); i++, date = date.plusDays(1)) {
+            boolean missing = i < markers.size() && (loaded == null || loaded.get(i) == null);
+            if (missing && missingBegin == null) {
+                missingBegin = date;
+            } else if (!missing && missingBegin != null) {
+                load(missingBegin, date.minusDays(1));
+                missingBegin = null;
+            }
+        }
+    }
+
+    private void load(LocalDate begin, LocalDate end) {
+        List<DailyGoodsSalesDTO> rows = orderMapper.getSalesByDate(LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX));
+        Map<LocalDate, List<DailyGoodsSalesDTO>> byDate = rows.stream().collect(Collectors.groupingBy(DailyGoodsSalesDTO::getDate));
+        LocalDate today = LocalDate.now();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            String key = SALES + date;
+            stringRedisTemplate.delete(key);
+            List<DailyGoodsSalesDTO> day = byDate.get(date);
+            if (day != null) {
+                Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+                day.forEach(x -> tuples.add(new DefaultTypedTuple<>(x.getName(), x.getNumber().doubleValue())));
+                stringRedisTemplate.opsForZSet().add(key, tuples);
+            }
+            if (date.isBefore(today)) {
+                stringRedisTemplate.opsForValue().set(LOADED + date, "1");
+            } else {
+                stringRedisTemplate.opsForValue().set(LOADED + date, "1", TODAY_LOADED_MINUTES, TimeUnit.MINUTES);
+            }
+        }
+        log.info("加载商品销量:{}至{}", begin, end);
+    }
+}
@@ -0,0 +1,81 @@
+package com.sky.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 工作台数据缓存:工作台页面由多个管理端会话轮询,统计结果在本节点缓存几秒,所有会话共用
+ * 缓存过期后同一数据同时只有一个线程查询数据库,其余线程等待其结果
+ */
+@Component
+public class WorkbenchCache {
+
+    // 缓存存活时间,工作台数据允许有几秒的延迟
+    private static final long TTL_MILLIS = 3000L;
+    // 缓存条目超过该数量时清理已过期的条目
+    private static final int MAX_ENTRIES = 64;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // 正在加载中的数据
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 获取缓存的统计结果,不存在或已过期时重新查询
+     *
+     * @param key
+     * @param loader
+     * @param <T>
+     * @return
+     */
+    public <T> T get(String key, Supplier<T> loader) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expireAt > System.currentTimeMillis()) {
+            return (T) entry.value;
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+        try {
+            T value = loader.get();
+            if (entries.size() >= MAX_ENTRIES) {
+                long now = System.currentTimeMillis();
+                entries.values().removeIf(e -> e.expireAt <= now);
+            }
+            entries.put(key, new Entry(value, System.currentTimeMillis() + TTL_MILLIS));
+            future.complete(value);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        } finally {
+            loading.remove(key, future);
+        }
+        return await(future);
+    }
+
+    private <T> T await(CompletableFuture<Object> future) {
+        try {
+            return (T) future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long expireAt;
+
+        Entry(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
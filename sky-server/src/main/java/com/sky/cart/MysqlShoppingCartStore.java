@@ -0,0 +1,63 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 基于shopping_cart表的购物车存储
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.shopping-cart", name = "store", havingValue = "mysql", matchIfMissing = true)
+public class MysqlShoppingCartStore implements ShoppingCartStore {
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    public boolean increment(ShoppingCart shoppingCart) {
+        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        if (list == null || list.isEmpty()) {
+            return false;
+        }
+        ShoppingCart cart = list.get(0);
+        cart.setNumber(cart.getNumber() + 1);
+        shoppingCartMapper.updateNumberById(cart);
+        return true;
+    }
+
+    public void add(ShoppingCart shoppingCart) {
+        shoppingCartMapper.inset(shoppingCart);
+    }
+
+    public void decrement(ShoppingCart shoppingCart) {
+        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        if (list != null && list.size() > 0) {
+            ShoppingCart cart = list.get(0);
+            cart.setNumber(cart.getNumber() - 1);
+            if (cart.getNumber() <= 0) {
+                shoppingCartMapper.deleteById(cart.getId());
+            } else {
+                shoppingCartMapper.updateNumberById(cart);
+            }
+        }
+    }
+
+    public List<ShoppingCart> list(Long userId) {
+        ShoppingCart shoppingCart = ShoppingCart.builder()
+                .userId(userId)
+                .build();
+        return shoppingCartMapper.list(shoppingCart);
+    }
+
+    public void clean(Long userId) {
+        shoppingCartMapper.deleteByUserId(userId);
+    }
+
+    public void addBatch(List<ShoppingCart> shoppingCartList) {
+        shoppingCartMapper.insertBatch(shoppingCartList);
+    }
+}
@@ -0,0 +1,183 @@
+package com.sky.cart;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.ShoppingCartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于redis hash的购物车存储
+ * shopping_cart_{userId} 保存 商品 -> 数量,shopping_cart_item_{userId} 保存 商品 -> 商品信息
+ * 增减数量通过lua脚本原子执行,可选择异步回写到shopping_cart表
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.shopping-cart", name = "store", havingValue = "redis")
+@Slf4j
+public class RedisShoppingCartStore implements ShoppingCartStore {
+
+    private static final String CART = "shopping_cart_{";
+    private static final String CART_ITEM = "shopping_cart_item_{";
+    // 需要回写到数据库的用户id集合
+    private static final String DIRTY = "shopping_cart_dirty";
+    // 每次回写的最大用户数
+    private static final int FLUSH_BATCH = 100;
+
+    /**
+     * 增加商品数量,商品信息不存在且未传入商品信息时返回-1
+     * KEYS: 数量hash, 商品信息hash  ARGV: 商品, 增加数量, 商品信息json, 过期秒数
+     */
+    private static final DefaultRedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[2], ARGV[1]) == 0 then " +
+            "  if ARGV[3] == '' then return -1 end " +
+            "  redis.call('HSET', KEYS[2], ARGV[1], ARGV[3]) " +
+            "end " +
+            "local n = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[4]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[4]) " +
+            "return n", Long.class);
+
+    /**
+     * 商品数量-1,减到0时删除该商品
+     * KEYS: 数量hash, 商品信息hash  ARGV: 商品
+     */
+    private static final DefaultRedisScript<Long> SUB_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+            "local n = redis.call('HINCRBY', KEYS[1], ARGV[1], -1) " +
+            "if n <= 0 then " +
+            "  redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "  redis.call('HDEL', KEYS[2], ARGV[1]) " +
+            "end " +
+            "return n", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private ShoppingCartProperties shoppingCartProperties;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    public boolean increment(ShoppingCart shoppingCart) {
+        Long n = execute(ADD_SCRIPT, shoppingCart, "1", "");
+        return n != null && n > 0;
+    }
+
+    public void add(ShoppingCart shoppingCart) {
+        int number = shoppingCart.getNumber() == null ? 1 : shoppingCart.getNumber();
+        execute(ADD_SCRIPT, shoppingCart, String.valueOf(number), JSON.toJSONString(shoppingCart));
+    }
+
+    public void decrement(ShoppingCart shoppingCart) {
+        stringRedisTemplate.execute(SUB_SCRIPT,
+                Arrays.asList(CART + shoppingCart.getUserId() + "}", CART_ITEM + shoppingCart.getUserId() + "}"),
+                field(shoppingCart));
+        markDirty(shoppingCart.getUserId());
+    }
+
+    public List<ShoppingCart> list(Long userId) {
+        Map<Object, Object> numbers = stringRedisTemplate.opsForHash().entries(CART + userId + "}");
+        if (numbers.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Object, Object> items = stringRedisTemplate.opsForHash().entries(CART_ITEM + userId + "}");
+        List<ShoppingCart> list = new ArrayList<>();
+        numbers.forEach((field, number) -> {
+            Object item = items.get(field);
+            if (item == null) {
+                return;
+            }
+            ShoppingCart cart = JSON.parseObject(item.toString(), ShoppingCart.class);
+            cart.setNumber(Integer.valueOf(number.toString()));
+            list.add(cart);
+        });
+        return list;
+    }
+
+    public void clean(Long userId) {
+        stringRedisTemplate.delete(Arrays.asList(CART + userId + "}", CART_ITEM + userId + "}"));
+        markDirty(userId);
+    }
+
+    public void addBatch(List<ShoppingCart> shoppingCartList) {
+        shoppingCartList.forEach(this::add);
+    }
+
+    /**
+     * 定时将有变动的购物车回写到shopping_cart表
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushWriteBehind() {
+        if (!shoppingCartProperties.isWriteBehind()) {
+            return;
+        }
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY, FLUSH_BATCH);
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+        log.info("回写购物车,用户数:{}", userIds.size());
+        for (String id : userIds) {
+            Long userId = Long.valueOf(id);
+            try {
+                // 删除和插入在同一事务中,失败时不会留下被清空的购物车
+                transactionTemplate.executeWithoutResult(status -> flush(userId));
+            } catch (RuntimeException e) {
+                log.error("回写用户{}的购物车失败,稍后重试", userId, e);
+                stringRedisTemplate.opsForSet().add(DIRTY, id);
+            }
+        }
+    }
+
+    private void flush(Long userId) {
+        List<ShoppingCart> list = list(userId);
+        shoppingCartMapper.deleteByUserId(userId);
+        if (!list.isEmpty()) {
+            list.forEach(cart -> cart.setUserId(userId));
+            shoppingCartMapper.insertBatch(list);
+        }
+    }
+
+    private Long execute(DefaultRedisScript<Long> script, ShoppingCart shoppingCart, String delta, String item) {
+        Long userId = shoppingCart.getUserId();
+        long ttlSeconds = shoppingCartProperties.getTtlDays() * 24 * 3600;
+        Long n = stringRedisTemplate.execute(script,
+                Arrays.asList(CART + userId + "}", CART_ITEM + userId + "}"),
+                field(shoppingCart), delta, item, String.valueOf(ttlSeconds));
+        if (n != null && n > 0) {
+            markDirty(userId);
+        }
+        return n;
+    }
+
+    /**
+     * 购物车中商品的标识:菜品为 d菜品id:口味,套餐为 s套餐id
+     * @param shoppingCart
+     * @return
+     */
+    private String field(ShoppingCart shoppingCart) {
+        if (shoppingCart.getDishId() != null) {
+            String flavor = shoppingCart.getDishFlavor() == null ? "" : shoppingCart.getDishFlavor();
+            return "d" + shoppingCart.getDishId() + ":" + flavor;
+        }
+        return "s" + shoppingCart.getSetmealId();
+    }
+
+    private void markDirty(Long userId) {
+        if (shoppingCartProperties.isWriteBehind()) {
+            stringRedisTemplate.opsForSet().add(DIRTY, String.valueOf(userId));
+        }
+    }
+}
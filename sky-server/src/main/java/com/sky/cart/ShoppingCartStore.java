@@ -0,0 +1,49 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+
+import java.util.List;
+
+/**
+ * 购物车存储
+ */
+public interface ShoppingCartStore {
+
+    /**
+     * 购物车中已有的商品数量+1
+     * @param shoppingCart 包含用户id、菜品id或套餐id、口味
+     * @return 购物车中没有该商品时返回false
+     */
+    boolean increment(ShoppingCart shoppingCart);
+
+    /**
+     * 新增购物车商品
+     * @param shoppingCart
+     */
+    void add(ShoppingCart shoppingCart);
+
+    /**
+     * 购物车中的商品数量-1,数量为0时删除该商品
+     * @param shoppingCart 包含用户id、菜品id或套餐id、口味
+     */
+    void decrement(ShoppingCart shoppingCart);
+
+    /**
+     * 查询用户的购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 清空用户的购物车
+     * @param userId
+     */
+    void clean(Long userId);
+
+    /**
+     * 批量添加购物车商品
+     * @param shoppingCartList
+     */
+    void addBatch(List<ShoppingCart> shoppingCartList);
+}
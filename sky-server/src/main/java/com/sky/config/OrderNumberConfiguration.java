@@ -0,0 +1,34 @@
+package com.sky.config;
+
+import com.sky.properties.OrderNumberProperties;
+import com.sky.task.WorkerIdLease;
+import com.sky.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 配置类用于创建订单号生成器
+ */
+@Configuration
+@Slf4j
+public class OrderNumberConfiguration {
+
+    @Bean
+    public SnowflakeIdGenerator orderNumberGenerator(OrderNumberProperties orderNumberProperties,
+                                                     WorkerIdLease workerIdLease) {
+        long workerId = orderNumberProperties.getWorkerId();
+        boolean leased = workerId < 0;
+        if (leased) {
+            // 未配置机器id时,从redis分配一个没有被其它节点持有的机器id,并定时续约
+            workerId = workerIdLease.acquire();
+        }
+        log.info("开始创建订单号生成器,机器id:{}", workerId);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(orderNumberProperties.getEpoch(), workerId,
+                orderNumberProperties.getMaxBackwardMillis());
+        if (leased) {
+            workerIdLease.bind(generator);
+        }
+        return generator;
+    }
+}
@@ -1,23 +1,92 @@
 package com.sky.config;
 
+import com.sky.cache.CatalogCache;
+import com.sky.cache.CompactRedisSerializer;
+import com.sky.cache.DishCache;
+import com.sky.cache.MenuSnapshotCache;
+import com.sky.properties.RedisCodecProperties;
+import com.sky.websocket.OrderEventBroadcaster;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
 @Slf4j
 public class RedisConfiguration {
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory){
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory,
+                                       CompactRedisSerializer compactRedisSerializer){
         log.info("开始创建redis模板对象...");
         RedisTemplate redisTemplate = new RedisTemplate();
         //设置redis连接工厂对象
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //设置redis key的序列化器
         redisTemplate.setKeySerializer(new StringRedisSerializer());
+        //设置redis value的序列化器
+        redisTemplate.setValueSerializer(compactRedisSerializer);
         return redisTemplate;
     }
+
+    /**
+     * redis值序列化器,读取时兼容jdk序列化的旧数据
+     * @param redisCodecProperties
+     * @return
+     */
+    @Bean
+    public CompactRedisSerializer compactRedisSerializer(RedisCodecProperties redisCodecProperties){
+        log.info("redis值序列化格式:{}", redisCodecProperties.getValueFormat());
+        return new CompactRedisSerializer(redisCodecProperties.getValueFormat(), getClass().getClassLoader());
+    }
+
+    /**
+     * 缓存注解使用的缓存管理器,与redis模板使用相同的值序列化器
+     * @param redisConnectionFactory
+     * @param compactRedisSerializer
+     * @return
+     */
+    @Bean
+    public RedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+                                          CompactRedisSerializer compactRedisSerializer){
+        RedisCacheConfiguration configuration = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(compactRedisSerializer));
+        return RedisCacheManager.builder(redisConnectionFactory)
+                .cacheDefaults(configuration)
+                .build();
+    }
+
+    /**
+     * redis消息监听容器,用于接收各节点发布的缓存清理消息
+     * @param redisConnectionFactory
+     * @param dishCache
+     * @param menuSnapshotCache
+     * @param catalogCache
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       DishCache dishCache,
+                                                                       MenuSnapshotCache menuSnapshotCache,
+                                                                       CatalogCache catalogCache,
+                                                                       OrderEventBroadcaster orderEventBroadcaster){
+        log.info("开始创建redis消息监听容器...");
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        //订阅菜品缓存清理频道
+        container.addMessageListener(dishCache, new ChannelTopic(DishCache.EVICT_CHANNEL));
+        //订阅菜单快照失效频道
+        container.addMessageListener(menuSnapshotCache, new ChannelTopic(MenuSnapshotCache.EVICT_CHANNEL));
+        //订阅菜品套餐信息清理频道
+        container.addMessageListener(catalogCache, new ChannelTopic(CatalogCache.EVICT_CHANNEL));
+        //订阅订单事件频道,推送给本节点的WebSocket客户端
+        container.addMessageListener(orderEventBroadcaster, new ChannelTopic(OrderEventBroadcaster.CHANNEL));
+        return container;
+    }
 }
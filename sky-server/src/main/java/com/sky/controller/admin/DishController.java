@@ -1,5 +1,7 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.DishCache;
+import com.sky.cache.MenuSnapshotCache;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
@@ -11,11 +13,12 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/admin/dish")
@@ -26,10 +29,9 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
-
-    private final String DISH_ALL = "dish_*";
-    private final String DISH = "dish_";
+    private DishCache dishCache;
+    @Autowired
+    private MenuSnapshotCache menuSnapshotCache;
 
     /**
      * 新增菜品
@@ -43,9 +45,9 @@ public class DishController {
         log.info("新增菜品:{}", dishDTO);
         dishService.saveWithFlavor(dishDTO);
 
-        // 清理redis缓存数据
-        String key = DISH + dishDTO.getCategoryId();
-        cleanCache(key);
+        // 清理当前分类的缓存数据
+        dishCache.evict(dishDTO.getCategoryId());
+        menuSnapshotCache.invalidate();
         return Result.success();
     }
 
@@ -84,9 +86,11 @@ public class DishController {
     @ApiOperation("菜品批量删除")
     public Result delete(@RequestParam List<Long> ids) {
         log.info("商品批量删除:{}", ids);
+        List<Long> categoryIds = dishService.getCategoryIds(ids);
         dishService.deleteBatch(ids);
-        // 将所有菜品缓存数据删除  所有以dish_开头的缓存 批量删除
-        cleanCache(DISH_ALL);
+        // 清理被删除菜品所在分类的缓存
+        dishCache.evict(categoryIds);
+        menuSnapshotCache.invalidate();
         return Result.success();
     }
 
@@ -108,9 +112,12 @@ public class DishController {
     @ApiOperation("修改菜品")
     public Result update(@RequestBody DishDTO dishDTO) {
         log.info("修改菜品:{}", dishDTO);
+        // 菜品可能被移到其它分类,原分类和新分类的缓存都要清理
+        List<Long> categoryIds = new ArrayList<>(dishService.getCategoryIds(Collections.singletonList(dishDTO.getId())));
+        categoryIds.add(dishDTO.getCategoryId());
         dishService.updateWithFlavor(dishDTO);
-        // 将所有菜品缓存数据删除  所有以dish_开头的缓存 批量删除
-        cleanCache(DISH_ALL);
+        dishCache.evict(categoryIds);
+        menuSnapshotCache.invalidate();
         return Result.success();
     }
 
@@ -118,12 +125,20 @@ public class DishController {
     @ApiOperation("菜品起售停售")
     public Result<String> startOrStop(@PathVariable Integer status, Long id) {
         dishService.startOrStop(status, id);
-        cleanCache(DISH_ALL);
+        // 清理菜品所在分类的缓存
+        dishCache.evict(dishService.getCategoryIds(Collections.singletonList(id)));
+        menuSnapshotCache.invalidate();
         return Result.success();
     }
 
-    private void cleanCache(String pattern) {
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
+    /**
+     * 查询菜品缓存命中统计
+     *
+     * @return
+     */
+    @GetMapping("/cache/stats")
+    @ApiOperation("查询菜品缓存命中统计")
+    public Result<Map<String, Long>> cacheStats() {
+        return Result.success(dishCache.stats());
     }
 }
@@ -0,0 +1,34 @@
+package com.sky.controller.admin;
+
+import com.sky.aspect.ClusterJobAspect;
+import com.sky.result.Result;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/job")
+@Api(tags = "定时任务相关接口")
+@Slf4j
+public class JobController {
+
+    @Autowired
+    private ClusterJobAspect clusterJobAspect;
+
+    /**
+     * 查询本节点定时任务执行统计
+     *
+     * @return
+     */
+    @GetMapping("/stats")
+    @ApiOperation("查询定时任务执行统计")
+    public Result<Map<String, Map<String, Long>>> stats() {
+        return Result.success(clusterJobAspect.stats());
+    }
+}
@@ -6,6 +6,7 @@ import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersRejectionDTO;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
+import com.sky.service.OrderExportService;
 import com.sky.service.OrderService;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderVO;
@@ -15,6 +16,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+
 @RestController("adminOrderControlle")
 @RequestMapping("/admin/order")
 @Api(tags = "订单管理接口")
@@ -23,6 +26,8 @@ public class OrderController {
 
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private OrderExportService orderExportService;
 
     /**
      * 订单搜索
@@ -37,6 +42,21 @@ public class OrderController {
         return Result.success(pageResult);
     }
 
+    /**
+     * 按订单搜索的条件导出订单
+     *
+     * @param ordersPageQueryDTO
+     * @param format 导出格式 csv / xlsx,默认csv
+     * @param response
+     */
+    @GetMapping("/export")
+    @ApiOperation("导出订单")
+    public void export(OrdersPageQueryDTO ordersPageQueryDTO,
+                       @RequestParam(defaultValue = "csv") String format,
+                       HttpServletResponse response) {
+        orderExportService.export(ordersPageQueryDTO, format, response);
+    }
+
     /**
      * 各个状态的订单数量统计
      *
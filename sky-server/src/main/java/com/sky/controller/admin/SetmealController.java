@@ -1,5 +1,6 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.MenuSnapshotCache;
 import com.sky.constant.SetmealConstant;
 import com.sky.dto.SetmealDTO;
 import com.sky.dto.SetmealPageQueryDTO;
@@ -24,6 +25,8 @@ public class SetmealController {
 
     @Autowired
     private SetmealService setmealService;
+    @Autowired
+    private MenuSnapshotCache menuSnapshotCache;
 
 
     @GetMapping("/page")
@@ -45,6 +48,7 @@ public class SetmealController {
     @CacheEvict(cacheNames = SetmealConstant.SETMEALCHACHE,key = "#setmealDTO.categoryId")
     public Result save(@RequestBody SetmealDTO setmealDTO) {
         setmealService.saveWithDish(setmealDTO);
+        menuSnapshotCache.invalidate();
         return Result.success();
     }
 
@@ -58,6 +62,7 @@ public class SetmealController {
     @CacheEvict(cacheNames = SetmealConstant.SETMEALCHACHE,allEntries = true)
     public Result delete(@RequestParam List<Long> ids){
         setmealService.deleteBatch(ids);
+        menuSnapshotCache.invalidate();
         return Result.success();
     }
 
@@ -85,6 +90,7 @@ public class SetmealController {
     @CacheEvict(cacheNames = SetmealConstant.SETMEALCHACHE,allEntries = true)
     public Result update(@RequestBody SetmealDTO setmealDTO) {
         setmealService.update(setmealDTO);
+        menuSnapshotCache.invalidate();
         return Result.success();
     }
 
@@ -99,6 +105,7 @@ public class SetmealController {
     @CacheEvict(cacheNames = SetmealConstant.SETMEALCHACHE,allEntries = true)
     public Result startOrStop(@PathVariable Integer status, Long id) {
         setmealService.startOrStop(status, id);
+        menuSnapshotCache.invalidate();
         return Result.success();
     }
 }
@@ -0,0 +1,34 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.websocket.OrderEventBroadcaster;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/websocket")
+@Api(tags = "WebSocket推送相关接口")
+@Slf4j
+public class WebSocketController {
+
+    @Autowired
+    private OrderEventBroadcaster orderEventBroadcaster;
+
+    /**
+     * 查询本节点订单事件推送统计
+     *
+     * @return
+     */
+    @GetMapping("/stats")
+    @ApiOperation("查询订单事件推送统计")
+    public Result<Map<String, Object>> stats() {
+        return Result.success(orderEventBroadcaster.stats());
+    }
+}
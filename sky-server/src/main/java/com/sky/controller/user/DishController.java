@@ -1,5 +1,7 @@
 package com.sky.controller.user;
 
+import com.sky.cache.DishCache;
+import com.sky.cache.SalesRanking;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Dish;
 import com.sky.result.Result;
@@ -9,7 +11,6 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -24,7 +25,9 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private DishCache dishCache;
+    @Autowired
+    private SalesRanking salesRanking;
 
     /**
      * 根据分类id查询菜品
@@ -35,25 +38,25 @@ public class DishController {
     @GetMapping("/list")
     @ApiOperation("根据分类id查询菜品")
     public Result<List<DishVO>> list(Long categoryId) {
-
-        // 构造redis中的key,规则:dish_分类id
-        String key = "dish_" + categoryId;
-        // 查询redis中是否存在菜品数据
-        List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
-        if (list != null && list.size() > 0) {
-            // 如果存在,直接返回,无需查询数据库
-            return Result.success(list);
-        }
-
-        Dish dish = new Dish();
-        dish.setCategoryId(categoryId);
-        dish.setStatus(StatusConstant.ENABLE);// 查询起售中的菜品
-        // 如果不存在,查询数据库,将查询到的数据放入redis中
-
-        list = dishService.listWithFlavor(dish);
-        redisTemplate.opsForValue().set(key, list);
+        // 依次查询本地缓存、redis,都不存在时查询数据库并放入缓存
+        List<DishVO> list = dishCache.get(categoryId, () -> {
+            Dish dish = new Dish();
+            dish.setCategoryId(categoryId);
+            dish.setStatus(StatusConstant.ENABLE);// 查询起售中的菜品
+            return dishService.listWithFlavor(dish);
+        });
 
         return Result.success(list);
     }
 
+    /**
+     * 最近热销的菜品和套餐名称
+     *
+     * @return
+     */
+    @GetMapping("/hot")
+    @ApiOperation("查询热销商品")
+    public Result<List<String>> hot() {
+        return Result.success(salesRanking.getHotDishes());
+    }
 }
@@ -0,0 +1,87 @@
+package com.sky.controller.user;
+
+import com.sky.cache.MenuSnapshotCache;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+@RestController("userMenuController")
+@RequestMapping("/user/menu")
+@Slf4j
+@Api(tags = "C端-完整菜单接口")
+public class MenuController {
+
+    @Autowired
+    private MenuSnapshotCache menuSnapshotCache;
+
+    /**
+     * 一次性查询完整菜单(分类、菜品及口味、套餐及菜品)
+     * 菜单未变化时返回304,客户端支持时返回gzip压缩后的内容
+     *
+     * @param request
+     * @param response
+     */
+    @GetMapping
+    @ApiOperation("查询完整菜单")
+    public void menu(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        MenuSnapshotCache.Snapshot snapshot = menuSnapshotCache.get();
+        // 先确定返回哪种内容,ETag和304判断都针对该内容
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        String etag = gzip ? snapshot.getGzipEtag() : snapshot.getEtag();
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        // 客户端缓存的菜单仍是最新的,无需返回内容
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = snapshot.getJson();
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            body = snapshot.getGzip();
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        ServletOutputStream outputStream = response.getOutputStream();
+        outputStream.write(body);
+        outputStream.flush();
+    }
+
+    /**
+     * If-None-Match中是否包含当前内容的ETag,可能是逗号分隔的多个ETag或*
+     *
+     * @param ifNoneMatch
+     * @param etag
+     * @return
+     */
+    private boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // If-None-Match使用弱比较,忽略W/前缀
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
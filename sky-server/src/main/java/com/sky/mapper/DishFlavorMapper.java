@@ -26,6 +26,13 @@ public interface DishFlavorMapper {
     @Select("select * from dish_flavor where dish_id = #{id}")
     List<DishFlavor> getByDishId(Long dishId);
 
+    /**
+     * 根据菜品id集合批量查询口味数据
+     * @param dishIds
+     * @return
+     */
+    List<DishFlavor> getByDishIds(List<Long> dishIds);
+
     /**
      * 根据菜品ID删除口味
      * @param dishId
@@ -5,6 +5,7 @@ import com.sky.annotation.AutoFill;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
 import com.sky.enumeration.OperationType;
+import com.sky.vo.DishOverViewVO;
 import com.sky.vo.DishVO;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
@@ -46,6 +47,13 @@ public interface DishMapper {
     @Select("select * from dish where id=#{id}")
     Dish getById(Long id);
 
+    /**
+     * 查询菜品所属的分类id,去重
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
+
     /**
      * 根据Id删除菜品
      * @param id
@@ -92,5 +100,13 @@ public interface DishMapper {
          */
         Integer countByMap(Map map);
 
+        /**
+         * 统计起售和停售的菜品数量
+         * @return
+         */
+        @Select("select coalesce(sum(case when status = 1 then 1 else 0 end), 0) as sold, " +
+                "coalesce(sum(case when status = 0 then 1 else 0 end), 0) as discontinued from dish")
+        DishOverViewVO countOverView();
+
 
 }
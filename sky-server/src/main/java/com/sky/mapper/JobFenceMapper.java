@@ -0,0 +1,17 @@
+package com.sky.mapper;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface JobFenceMapper {
+
+    /**
+     * 节点获得新租约后提升任务的令牌,令牌只增不减
+     * @param job
+     * @param token
+     */
+    @Insert("insert into job_fence (job, token) values (#{job}, #{token}) " +
+            "on duplicate key update token = greatest(token, values(token))")
+    void raise(String job, long token);
+}
@@ -0,0 +1,50 @@
+package com.sky.mapper;
+
+import com.sky.dto.DailyStatsDTO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface OrderDailyStatsMapper {
+
+    /**
+     * 查询日期区间内的每日汇总数据,按日期排序
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select stat_date as date, turnover, order_count, valid_order_count, cancelled_order_count, " +
+            "pending_payment_count, to_be_confirmed_count, confirmed_count, delivery_in_progress_count, new_users " +
+            "from order_daily_stats where stat_date between #{begin} and #{end} order by stat_date")
+    List<DailyStatsDTO> list(LocalDate begin, LocalDate end);
+
+    /**
+     * 批量写入每日汇总数据,已存在的日期覆盖
+     * @param statsList
+     */
+    void upsertBatch(List<DailyStatsDTO> statsList);
+
+    /**
+     * 锁定日期区间内已有的汇总数据,重新统计期间不会与订单状态变化的增量修改交错
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select stat_date from order_daily_stats where stat_date between #{begin} and #{end} for update")
+    List<LocalDate> lockRange(LocalDate begin, LocalDate end);
+
+    /**
+     * 订单状态变化后按原状态和新状态增减订单所在日期的汇总数据,营业额按订单金额增减
+     * 只修改before之前下单的订单;汇总表中还没有该日期时不修改,查询该日期时从orders表统计
+     * @param orderId
+     * @param fromStatus 原状态
+     * @param toStatus 新状态
+     * @param before
+     * @return 修改的行数
+     */
+    int applyTransition(Long orderId, Integer fromStatus, Integer toStatus, LocalDateTime before);
+}
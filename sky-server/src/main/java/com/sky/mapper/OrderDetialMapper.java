@@ -5,16 +5,22 @@ import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Mapper
 public interface OrderDetialMapper {
-    void insertBatch(ArrayList<OrderDetail> orderDetaillist);
+    void insertBatch(List<OrderDetail> orderDetaillist);
 
     @Select("select * from order_detail where order_id =#{id}")
     List<OrderDetail> getByOrderId(Long id);
 
+    /**
+     * 根据订单id批量查询订单明细
+     * @param orderIds
+     * @return
+     */
+    List<OrderDetail> getByOrderIds(List<Long> orderIds);
+
     @Delete("delete from order_detail where  order_id = #{id}")
     void deleteById(Long id);
 }
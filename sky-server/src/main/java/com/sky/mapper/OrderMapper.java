@@ -1,14 +1,20 @@
 package com.sky.mapper;
 
 import com.github.pagehelper.Page;
+import com.sky.dto.DailyGoodsSalesDTO;
+import com.sky.dto.DailyStatsDTO;
 import com.sky.dto.GoodsSalesDTO;
+import com.sky.dto.OrderExportDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
+import com.sky.task.JobFence;
+import com.sky.vo.OrderOverViewVO;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
-import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -22,17 +28,20 @@ public interface OrderMapper {
      */
     void insert(Orders orders);
 
+    /**
+     * 批量添加订单,添加后回填各订单的id
+     * @param ordersList
+     */
+    void insertBatch(List<Orders> ordersList);
+
 
 
     /**
-     * 根据订单号查询订单
+     * 根据订单号查询订单,number为字符串列,参数必须是字符串才能使用索引
      * @param orderNumber
      */
-    @Select("select * from orders where id = #{orderNumber}")
-    Orders getByNumber(String orderNumber);
-
     @Select("select * from orders where number = #{orderNumber}")
-    Orders getByorderNumber(Long orderNumber);
+    Orders getByNumber(String orderNumber);
 
     /**
      * 修改订单信息
@@ -48,10 +57,30 @@ public interface OrderMapper {
      */
     Page<Orders> pageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 按分页查询的条件流式查询订单及订单明细,每条明细一行,需要在事务中遍历
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    Cursor<OrderExportDTO> exportCursor(OrdersPageQueryDTO ordersPageQueryDTO);
+
     @Delete("delete from orders where id =#{id}")
     void deleteById(Long id);
 
 
+    /**
+     * 统计指定时间之后下单的待接单、待派送、已完成、已取消和全部订单数量
+     * @param begin
+     * @return
+     */
+    @Select("select coalesce(sum(case when status = 2 then 1 else 0 end), 0) as waiting_orders, " +
+            "coalesce(sum(case when status = 3 then 1 else 0 end), 0) as delivered_orders, " +
+            "coalesce(sum(case when status = 5 then 1 else 0 end), 0) as completed_orders, " +
+            "coalesce(sum(case when status = 6 then 1 else 0 end), 0) as cancelled_orders, " +
+            "count(id) as all_orders " +
+            "from orders where order_time > #{begin}")
+    OrderOverViewVO countOverView(LocalDateTime begin);
+
     /**
      * 根据状态统计订单数量
      * @param status
@@ -59,6 +88,13 @@ public interface OrderMapper {
     @Select("select count(id) from orders where status = #{status}")
     Integer countStatus(Integer status);
 
+    /**
+     * 统计各状态的订单数量
+     * @return status, number
+     */
+    @Select("select status, count(id) as number from orders group by status")
+    List<Map<String, Object>> countGroupByStatus();
+
 
     @Select("select * from orders where id = #{id}")
     Orders getById(Long id);
@@ -72,8 +108,53 @@ public interface OrderMapper {
     @Select("select * from orders where status=#{status} and order_time< #{orderTime}")
     List<Orders> getByStatusAndOrderTimeLT(Integer status, LocalDateTime orderTime);
 
-    @Update("update orders set pay_status=1 ,status=2 where number = #{orderNumber}")
-    void pay(String orderNumber);
+    /**
+     * 批量取消处于指定状态的订单
+     * @param ids
+     * @param status 订单当前应处于的状态,状态已变化的订单不会被取消
+     * @param cancelReason
+     * @param cancelTime
+     * @return 取消的订单数
+     */
+    int cancelByIds(List<Long> ids, Integer status, String cancelReason, LocalDateTime cancelTime);
+
+    /**
+     * 订单处于fromStatus中的某个状态时,修改订单状态和其它字段
+     * @param orders 要修改的字段,id必填
+     * @param fromStatus 允许的原状态
+     * @return 修改的订单数,为0表示订单不存在或状态不符
+     */
+    int transition(Orders orders, List<Integer> fromStatus);
+
+    /**
+     * 查询订单的下单日期
+     * @param ids
+     * @return 去重后的日期
+     */
+    List<LocalDate> getOrderDatesByIds(List<Long> ids);
+
+    /**
+     * 查询下单时间早于指定时间、处于该状态的订单的下单日期
+     * @param status
+     * @param orderTime
+     * @return 去重后的日期,按日期排序
+     */
+    @Select("select distinct date(order_time) as d from orders where status = #{status} and order_time < #{orderTime} order by d")
+    List<LocalDate> getOrderDatesByStatusAndOrderTimeLT(Integer status, LocalDateTime orderTime);
+
+    /**
+     * 将下单时间早于指定时间、处于fromStatus的订单改为toStatus,每次最多修改limit条
+     * @param fromStatus
+     * @param toStatus
+     * @param orderTime
+     * @param cancelReason 取消原因,不为空时同时设置取消原因和取消时间
+     * @param limit
+     * @param fence 集群任务的令牌,不为空时只有令牌仍是该任务的最新令牌才修改
+     * @return 修改的订单数
+     */
+    int transitionByOrderTimeLT(Integer fromStatus, Integer toStatus, LocalDateTime orderTime,
+                                String cancelReason, int limit, JobFence fence);
+
 
     /**
      * 金额统计
@@ -89,6 +170,14 @@ public interface OrderMapper {
      */
     Integer countByMap(Map map);
 
+    /**
+     * 按天统计时间区间内的订单总数、各状态订单数和营业额,没有订单的日期不返回
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyStatsDTO> sumByDate(LocalDateTime begin, LocalDateTime end);
+
     /**
      * 统计时间区间内销量TOP10菜品
      * @param begin
@@ -96,4 +185,12 @@ public interface OrderMapper {
      * @return
      */
     List<GoodsSalesDTO> getSalesTOP10(LocalDateTime begin,LocalDateTime end);
+
+    /**
+     * 按天统计时间区间内各商品的销量
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyGoodsSalesDTO> getSalesByDate(LocalDateTime begin, LocalDateTime end);
 }
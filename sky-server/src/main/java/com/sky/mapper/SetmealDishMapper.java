@@ -39,6 +39,13 @@ public interface SetmealDishMapper {
     @Select("select * from setmeal_dish where setmeal_id = #{setmealId}")
     List<SetmealDish> getBySetmealId(Long setmealId);
 
+    /**
+     * 根据套餐id集合批量查询套餐和菜品的关联关系
+     * @param setmealIds
+     * @return
+     */
+    List<SetmealDish> getBySetmealIds(List<Long> setmealIds);
+
 
 
 }
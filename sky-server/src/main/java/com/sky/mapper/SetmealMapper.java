@@ -6,6 +6,7 @@ import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.entity.Setmeal;
 import com.sky.enumeration.OperationType;
 import com.sky.vo.DishItemVO;
+import com.sky.vo.SetmealOverViewVO;
 import com.sky.vo.SetmealVO;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
@@ -78,4 +79,12 @@ public interface SetmealMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 统计起售和停售的套餐数量
+     * @return
+     */
+    @Select("select coalesce(sum(case when status = 1 then 1 else 0 end), 0) as sold, " +
+            "coalesce(sum(case when status = 0 then 1 else 0 end), 0) as discontinued from setmeal")
+    SetmealOverViewVO countOverView();
 }
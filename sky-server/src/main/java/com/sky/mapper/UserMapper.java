@@ -1,9 +1,12 @@
 package com.sky.mapper;
 
+import com.sky.dto.DailyStatsDTO;
 import com.sky.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Mapper
@@ -38,4 +41,12 @@ public interface UserMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 按天统计时间区间内的新增用户数,没有新增用户的日期不返回
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyStatsDTO> countByDate(LocalDateTime begin, LocalDateTime end);
 }
@@ -0,0 +1,241 @@
+package com.sky.order;
+
+import com.sky.annotation.ClusterJob;
+import com.sky.cache.SalesRanking;
+import com.sky.constant.MessageConstant;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderDetialMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.service.OrderDailyStatsService;
+import com.sky.utils.WeChatPayUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单状态机:每次状态转换是一条 update ... where id = ? and status in (...) 语句,由修改行数判断是否成功
+ * 并发操作同一订单时只有一个能成功,不会出现后写覆盖先写
+ * 转换成功的事务提交后,依次执行该转换注册的钩子(退款、销量排行、状态计数等)
+ * 事务回滚时钩子不会执行;钩子失败不影响已提交的状态和其它钩子,退款失败时记录下来定时重试
+ */
+@Component
+@Slf4j
+public class OrderStateMachine {
+
+    // 退款失败、等待重试的订单号集合
+    private static final String REFUND_RETRY = "order_refund_retry";
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderDetialMapper orderDetialMapper;
+    @Autowired
+    private WeChatPayUtil weChatPayUtil;
+    @Autowired
+    private SalesRanking salesRanking;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderDailyStatsService orderDailyStatsService;
+    @Autowired
+    private OrderTimeoutQueue orderTimeoutQueue;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final Map<OrderTransition, List<Hook>> hooks = new EnumMap<>(OrderTransition.class);
+
+    @PostConstruct
+    public void init() {
+        // 已支付的订单退款
+        on(this::refund, OrderTransition.REJECT, OrderTransition.USER_CANCEL, OrderTransition.ADMIN_CANCEL);
+        // 已支付的订单移出超时队列
+        on(context -> orderTimeoutQueue.remove(context.getId()), OrderTransition.PAY);
+        // 累加销量排行
+        on(context -> salesRanking.onCompleted(context.getOrder().getOrderTime(),
+                orderDetialMapper.getByOrderId(context.getId())), OrderTransition.COMPLETE);
+        on(context -> orderStatusCounter.move(context.getFromStatus(), context.getTransition().getToStatus(), 1),
+                OrderTransition.values());
+    }
+
+    /**
+     * 注册状态转换提交后执行的钩子,按注册顺序执行
+     *
+     * @param hook
+     * @param transitions
+     */
+    public synchronized void on(Hook hook, OrderTransition... transitions) {
+        for (OrderTransition transition : transitions) {
+            hooks.computeIfAbsent(transition, t -> new ArrayList<>()).add(hook);
+        }
+    }
+
+    /**
+     * 执行状态转换
+     *
+     * @param transition
+     * @param orders 要修改的字段,id必填,状态由transition决定
+     * @param ordersDB 调用方已查询的订单,传入时只有订单仍处于该状态才修改;
+     *                 为空时按transition允许的原状态修改,不查询订单
+     */
+    @Transactional
+    public void fire(OrderTransition transition, Orders orders, Orders ordersDB) {
+        List<Integer> fromStatus = transition.getFromStatus();
+        if (ordersDB == null && fromStatus.size() > 1) {
+            // 有多个原状态时,需要知道实际的原状态才能更新状态计数
+            ordersDB = orderMapper.getById(orders.getId());
+            if (ordersDB == null) {
+                throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+            }
+        }
+        if (ordersDB != null) {
+            if (!fromStatus.contains(ordersDB.getStatus())) {
+                throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+            }
+            fromStatus = Collections.singletonList(ordersDB.getStatus());
+        }
+
+        orders.setStatus(transition.getToStatus());
+        if (orderMapper.transition(orders, fromStatus) == 0) {
+            // 订单不存在,或已被其它操作修改了状态
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
+        // 每日汇总数据与订单状态在同一事务中修改
+        orderDailyStatsService.applyTransition(orders.getId(), ordersDB == null ? null : ordersDB.getOrderTime(),
+                fromStatus.get(0), transition.getToStatus());
+
+        Context context = new Context(transition, orders.getId(), fromStatus.get(0), ordersDB);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 钩子会修改redis或调用外部接口,等状态修改提交后再执行
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runHooks(context);
+                }
+            });
+        } else {
+            runHooks(context);
+        }
+    }
+
+    private void runHooks(Context context) {
+        for (Hook hook : hooks.getOrDefault(context.getTransition(), Collections.emptyList())) {
+            try {
+                hook.run(context);
+            } catch (Exception e) {
+                // 订单状态已提交,记录错误后继续执行其它钩子,状态计数等由定时任务校正
+                log.error("订单{}{}后的处理失败", context.getId(), context.getTransition(), e);
+            }
+        }
+    }
+
+    /**
+     * 重试失败的退款,商户退款单号与订单号相同,重复申请不会重复退款
+     */
+    @Scheduled(fixedDelay = 60000)
+    @ClusterJob
+    public void retryRefunds() {
+        List<String> numbers = stringRedisTemplate.opsForSet().pop(REFUND_RETRY, 100);
+        if (numbers == null) {
+            return;
+        }
+        for (String number : numbers) {
+            refund(number);
+        }
+    }
+
+    /**
+     * 已支付的订单取消或拒单时退款
+     *
+     * @param context
+     */
+    private void refund(Context context) {
+        Orders ordersDB = context.getOrder();
+        if (Orders.PAID.equals(ordersDB.getPayStatus())) {
+            refund(ordersDB.getNumber());
+        }
+    }
+
+    /**
+     * 申请退款,失败时放入重试集合
+     *
+     * @param number 订单号
+     */
+    private void refund(String number) {
+        try {
+            // 调用微信支付退款接口
+            String refund = weChatPayUtil.refund(
+                    number, // 商户订单号
+                    number, // 商户退款单号
+                    new BigDecimal(0.01),// 退款金额，单位 元
+                    new BigDecimal(0.01));// 原订单金额
+            log.info("申请退款：{}", refund);
+        } catch (Exception e) {
+            log.error("订单{}退款失败,稍后重试", number, e);
+            stringRedisTemplate.opsForSet().add(REFUND_RETRY, number);
+        }
+    }
+
+    /**
+     * 状态转换提交后执行的钩子
+     */
+    @FunctionalInterface
+    public interface Hook {
+        void run(Context context) throws Exception;
+    }
+
+    /**
+     * 一次状态转换的信息
+     */
+    public class Context {
+        private final OrderTransition transition;
+        private final Long id;
+        private final Integer fromStatus;
+        private Orders order;
+
+        Context(OrderTransition transition, Long id, Integer fromStatus, Orders order) {
+            this.transition = transition;
+            this.id = id;
+            this.fromStatus = fromStatus;
+            this.order = order;
+        }
+
+        public OrderTransition getTransition() {
+            return transition;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Integer getFromStatus() {
+            return fromStatus;
+        }
+
+        /**
+         * 转换前查询的订单;调用方未查询时,提交后第一次调用时查询,之后的钩子共用
+         * 支付状态、订单号、下单时间等字段不受状态转换影响
+         *
+         * @return
+         */
+        public Orders getOrder() {
+            if (order == null) {
+                order = orderMapper.getById(id);
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.sky.order;
+
+import com.sky.annotation.ClusterJob;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 各状态的订单数量计数器
+ * redis hash order_status_count 保存 状态 -> 订单数量,订单状态变化时原子地增减
+ * 本节点保存一份副本,每秒从redis刷新一次,读取时不访问redis和数据库
+ * hash中的version字段在每次修改时递增,副本的每个状态记录其数值对应的version,只用更新的数值覆盖,
+ * 刷新时读到的旧数据不会覆盖本节点刚刚修改后的计数
+ * 计数与数据库可能因事务回滚等原因出现偏差,定时按数据库统计结果校正
+ */
+@Component
+@Slf4j
+public class OrderStatusCounter {
+
+    private static final String KEY = "order_status_count";
+    // 计数hash中的版本号字段
+    private static final String VERSION = "version";
+    // 订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+    private static final int MAX_STATUS = Orders.CANCELLED;
+
+    /**
+     * 将订单从一个状态移到另一个状态,原状态为空表示新订单
+     * KEYS: 计数hash  ARGV: 原状态, 新状态, 订单数量
+     * 返回: 版本号, 原状态的数量(新订单为0), 新状态的数量
+     */
+    private static final DefaultRedisScript<List> MOVE_SCRIPT = new DefaultRedisScript<>(
+            "local from = 0 " +
+            "if ARGV[1] ~= '' then from = redis.call('HINCRBY', KEYS[1], ARGV[1], -ARGV[3]) end " +
+            "local to = redis.call('HINCRBY', KEYS[1], ARGV[2], ARGV[3]) " +
+            "return {redis.call('HINCRBY', KEYS[1], '" + VERSION + "', 1), from, to}", List.class);
+
+    /**
+     * 用数据库的统计结果覆盖计数
+     * KEYS: 计数hash  ARGV: 状态1的数量 ... 状态6的数量
+     * 返回: 版本号
+     */
+    private static final DefaultRedisScript<Long> RESET_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #ARGV do redis.call('HSET', KEYS[1], tostring(i), ARGV[i]) end " +
+            "return redis.call('HINCRBY', KEYS[1], '" + VERSION + "', 1)", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+
+    // 本节点的计数副本,下标为订单状态
+    private final AtomicLongArray local = new AtomicLongArray(MAX_STATUS + 1);
+    // 副本中各状态的数值对应的redis版本号,只在持有this锁时修改
+    private final long[] versions = new long[MAX_STATUS + 1];
+
+    @PostConstruct
+    public void init() {
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(KEY))) {
+            refresh();
+        } else {
+            reconcile();
+        }
+    }
+
+    /**
+     * 订单状态变化
+     *
+     * @param fromStatus 原状态,新订单为空
+     * @param toStatus 新状态
+     * @param count 订单数量
+     */
+    public void move(Integer fromStatus, Integer toStatus, long count) {
+        if (count <= 0 || toStatus.equals(fromStatus)) {
+            return;
+        }
+        List<?> result;
+        try {
+            result = stringRedisTemplate.execute(MOVE_SCRIPT, Collections.singletonList(KEY),
+                    fromStatus == null ? "" : String.valueOf(fromStatus), String.valueOf(toStatus), String.valueOf(count));
+        } catch (RuntimeException e) {
+            // 计数失败不影响订单处理,由定时校正修复
+            log.warn("更新订单状态计数失败:{} -> {},{}个", fromStatus, toStatus, count, e);
+            return;
+        }
+        // 使用redis中修改后的数量,本节点立即可见,其它节点在下次刷新时可见
+        long version = ((Number) result.get(0)).longValue();
+        synchronized (this) {
+            if (fromStatus != null) {
+                apply(fromStatus, ((Number) result.get(1)).longValue(), version);
+            }
+            apply(toStatus, ((Number) result.get(2)).longValue(), version);
+        }
+    }
+
+    /**
+     * 查询处于指定状态的订单数量
+     *
+     * @param status
+     * @return
+     */
+    public int get(Integer status) {
+        return (int) Math.max(0, local.get(status));
+    }
+
+    /**
+     * 每秒从redis刷新本节点的计数
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void refresh() {
+        // HGETALL一次读取所有状态和版本号,是同一时刻的数据
+        Map<Object, Object> counts = stringRedisTemplate.opsForHash().entries(KEY);
+        Object version = counts.get(VERSION);
+        long snapshotVersion = version == null ? 0 : Long.parseLong(version.toString());
+        synchronized (this) {
+            for (int status = 1; status <= MAX_STATUS; status++) {
+                Object count = counts.get(String.valueOf(status));
+                apply(status, count == null ? 0 : Long.parseLong(count.toString()), snapshotVersion);
+            }
+        }
+    }
+
+    /**
+     * 更新副本中一个状态的数量,比副本更旧的数值忽略
+     *
+     * @param status
+     * @param count
+     * @param version 该数值对应的redis版本号
+     */
+    private void apply(int status, long count, long version) {
+        if (version >= versions[status]) {
+            local.set(status, count);
+            versions[status] = version;
+        }
+    }
+
+    /**
+     * 按数据库的统计结果校正计数
+     * 统计期间发生的状态变化可能被覆盖,偏差会在下一次校正时消除
+     */
+    @Scheduled(cron = "0 0/5 * * * ?")
+    @ClusterJob
+    public void reconcile() {
+        long[] counts = new long[MAX_STATUS + 1];
+        List<Map<String, Object>> rows = orderMapper.countGroupByStatus();
+        for (Map<String, Object> row : rows) {
+            int status = ((Number) row.get("status")).intValue();
+            if (status >= 1 && status <= MAX_STATUS) {
+                counts[status] = ((Number) row.get("number")).longValue();
+            }
+        }
+
+        String[] args = new String[MAX_STATUS];
+        for (int status = 1; status <= MAX_STATUS; status++) {
+            if (local.get(status) != counts[status]) {
+                log.info("校正订单状态计数:状态{},{} -> {}", status, local.get(status), counts[status]);
+            }
+            args[status - 1] = String.valueOf(counts[status]);
+        }
+        Long version = stringRedisTemplate.execute(RESET_SCRIPT, Collections.singletonList(KEY), (Object[]) args);
+        synchronized (this) {
+            for (int status = 1; status <= MAX_STATUS; status++) {
+                apply(status, counts[status], version == null ? 0 : version);
+            }
+        }
+    }
+}
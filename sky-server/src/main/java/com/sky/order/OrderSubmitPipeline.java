@@ -0,0 +1,223 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderDetialMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderSubmitProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 订单批量提交:下单请求放入队列,后台线程把同一时间段内的多个订单合并,
+ * 在一个事务中用多行insert写入orders和order_detail,减少数据库往返和连接占用
+ */
+@Component
+@Slf4j
+public class OrderSubmitPipeline {
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderDetialMapper orderDetialMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private OrderSubmitProperties orderSubmitProperties;
+
+    private BlockingQueue<PendingOrder> queue;
+    private Thread worker;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!orderSubmitProperties.isPipeline()) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(orderSubmitProperties.getQueueCapacity());
+        running = true;
+        worker = new Thread(this::run, "order-submit-pipeline");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("订单批量提交已开启,每批最多{}单", orderSubmitProperties.getBatchSize());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (worker == null) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+        // 后台线程未能在等待时间内写完时,队列中剩余的订单直接失败,不让下单请求一直等待
+        List<PendingOrder> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            log.warn("订单批量提交已停止,{}个订单未写入", rest.size());
+            rest.forEach(p -> p.future.completeExceptionally(new OrderBusinessException(MessageConstant.ORDER_BUSY)));
+        }
+    }
+
+    public boolean isEnabled() {
+        return worker != null;
+    }
+
+    /**
+     * 提交订单并等待写入完成,返回时orders和orderDetails已设置id
+     *
+     * @param orders
+     * @param orderDetails
+     */
+    public void submit(Orders orders, List<OrderDetail> orderDetails) {
+        PendingOrder pending = new PendingOrder(orders, orderDetails);
+        if (!running || !queue.offer(pending)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_BUSY);
+        }
+        // 入队的同时停止了批量提交,后台线程可能已经退出
+        if (!running && queue.remove(pending)) {
+            throw new OrderBusinessException(MessageConstant.ORDER_BUSY);
+        }
+        long timeout = orderSubmitProperties.getSubmitTimeoutMillis();
+        if (!await(pending, timeout)) {
+            // 还没有被后台线程取走的订单不会再写入,可以直接失败
+            if (pending.claim()) {
+                throw new OrderBusinessException(MessageConstant.ORDER_BUSY);
+            }
+            // 订单正在写入,事务结束后才能知道结果,再等待一次
+            if (!await(pending, timeout)) {
+                log.error("订单{}写入超时,结果未知", pending.orders.getNumber());
+                throw new OrderBusinessException(MessageConstant.ORDER_BUSY);
+            }
+        }
+    }
+
+    /**
+     * 等待订单写入完成
+     *
+     * @param pending
+     * @param timeoutMillis
+     * @return 超时返回false
+     */
+    private boolean await(PendingOrder pending, long timeoutMillis) {
+        try {
+            pending.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OrderBusinessException(MessageConstant.ORDER_BUSY);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    private void run() {
+        List<PendingOrder> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 在等待时间内继续凑批
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(orderSubmitProperties.getMaxWaitMillis());
+                while (batch.size() < orderSubmitProperties.getBatchSize()) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingOrder next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // 停止时不再等待凑批,队列中剩余的订单在后续循环中写完
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中写入一批订单,失败时逐单重试,避免个别订单导致整批下单失败
+     *
+     * @param batch
+     */
+    private void commit(List<PendingOrder> batch) {
+        // 跳过等待超时、已经放弃的订单
+        batch.removeIf(p -> !p.claim());
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(batch));
+            batch.forEach(p -> p.future.complete(null));
+            return;
+        } catch (Throwable e) {
+            log.warn("批量写入{}个订单失败,逐单重试:{}", batch.size(), e.getMessage());
+        }
+        for (PendingOrder pending : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(Collections.singletonList(pending)));
+                pending.future.complete(null);
+            } catch (Throwable e) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void insert(List<PendingOrder> batch) {
+        List<Orders> ordersList = new ArrayList<>(batch.size());
+        batch.forEach(p -> ordersList.add(p.orders));
+        orderMapper.insertBatch(ordersList);
+
+        List<OrderDetail> orderDetaillist = new ArrayList<>();
+        for (PendingOrder pending : batch) {
+            pending.orderDetails.forEach(d -> d.setOrderId(pending.orders.getId()));
+            orderDetaillist.addAll(pending.orderDetails);
+        }
+        orderDetialMapper.insertBatch(orderDetaillist);
+    }
+
+    private static class PendingOrder {
+        private final Orders orders;
+        private final List<OrderDetail> orderDetails;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        // 被后台线程取走写入,或被等待超时的下单请求放弃
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        PendingOrder(Orders orders, List<OrderDetail> orderDetails) {
+            this.orders = orders;
+            this.orderDetails = orderDetails;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.service.OrderDailyStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 待付款订单的超时队列:redis有序集合,成员为订单id,分数为超时时间戳
+ * 下单时加入,支付成功时移除,到期的订单每秒批量取消
+ */
+@Component
+@Slf4j
+public class OrderTimeoutQueue {
+
+    // 待付款订单的超时时间
+    public static final long PAY_TIMEOUT_MINUTES = 15;
+    private static final String KEY = "order_timeout";
+    // 每次最多取出的到期订单数
+    private static final int BATCH = 200;
+    // 取消失败时重新放回队列的延迟
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    /**
+     * 取出并删除到期的订单,多个节点同时执行时每个订单只会被一个节点取到
+     * KEYS: 有序集合  ARGV: 当前时间戳, 最多取出数量
+     */
+    private static final DefaultRedisScript<List> POLL_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "if #ids > 0 then redis.call('ZREM', KEYS[1], unpack(ids)) end " +
+            "return ids", List.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderDailyStatsService orderDailyStatsService;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+
+    /**
+     * 新订单加入超时队列
+     *
+     * @param orderId
+     * @param orderTime 下单时间
+     */
+    public void add(Long orderId, LocalDateTime orderTime) {
+        long deadline = orderTime.plusMinutes(PAY_TIMEOUT_MINUTES)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        stringRedisTemplate.opsForZSet().add(KEY, String.valueOf(orderId), deadline);
+    }
+
+    /**
+     * 订单已支付或已取消,移出超时队列
+     *
+     * @param orderId
+     */
+    public void remove(Long orderId) {
+        stringRedisTemplate.opsForZSet().remove(KEY, String.valueOf(orderId));
+    }
+
+    /**
+     * 每秒取消一次到期的订单
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void cancelExpired() {
+        List<String> ids;
+        do {
+            ids = stringRedisTemplate.execute(POLL_SCRIPT, Collections.singletonList(KEY),
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(BATCH));
+            if (ids == null || ids.isEmpty()) {
+                return;
+            }
+            List<Long> orderIds = ids.stream().map(Long::valueOf).collect(Collectors.toList());
+            try {
+                // 只取消仍处于待付款状态的订单,已支付的订单不受影响
+                int count = orderMapper.cancelByIds(orderIds, Orders.PENDING_PAYMENT,
+                        Orders.ORDERTIMEOUTCANCEELED, LocalDateTime.now());
+                log.info("超时取消订单:到期{}个,取消{}个", orderIds.size(), count);
+                orderStatusCounter.move(Orders.PENDING_PAYMENT, Orders.CANCELLED, count);
+                if (count > 0) {
+                    // 按订单标记,订单可能在队列中积压了较长时间,下单日期不能按当前时间推算
+                    orderDailyStatsService.markDirtyOrders(orderIds);
+                }
+            } catch (RuntimeException e) {
+                log.error("超时取消订单失败,稍后重试:{}", orderIds, e);
+                long retryAt = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+                ids.forEach(id -> stringRedisTemplate.opsForZSet().add(KEY, id, retryAt));
+                return;
+            }
+        } while (ids.size() == BATCH);
+    }
+}
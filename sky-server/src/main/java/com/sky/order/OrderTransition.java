@@ -0,0 +1,46 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 订单状态转换:转换后的状态和允许的原状态
+ * 订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+ */
+public enum OrderTransition {
+
+    // 支付
+    PAY(Orders.TO_BE_CONFIRMED, Orders.PENDING_PAYMENT),
+    // 商家接单
+    CONFIRM(Orders.CONFIRMED, Orders.TO_BE_CONFIRMED),
+    // 商家拒单
+    REJECT(Orders.CANCELLED, Orders.TO_BE_CONFIRMED),
+    // 用户取消,接单后不能取消
+    USER_CANCEL(Orders.CANCELLED, Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED),
+    // 商家取消,已完成的订单不能取消
+    ADMIN_CANCEL(Orders.CANCELLED, Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED,
+            Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS),
+    // 派送
+    DELIVER(Orders.DELIVERY_IN_PROGRESS, Orders.CONFIRMED),
+    // 完成
+    COMPLETE(Orders.COMPLETED, Orders.DELIVERY_IN_PROGRESS);
+
+    private final Integer toStatus;
+    private final List<Integer> fromStatus;
+
+    OrderTransition(Integer toStatus, Integer... fromStatus) {
+        this.toStatus = toStatus;
+        this.fromStatus = Collections.unmodifiableList(Arrays.asList(fromStatus));
+    }
+
+    public Integer getToStatus() {
+        return toStatus;
+    }
+
+    public List<Integer> getFromStatus() {
+        return fromStatus;
+    }
+}
@@ -52,4 +52,11 @@ public interface DishService {
     List<DishVO> listWithFlavor(Dish dish);
 
     void startOrStop(Integer status, Long id);
+
+    /**
+     * 查询菜品所属的分类id,用于清理分类缓存
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIds(List<Long> ids);
 }
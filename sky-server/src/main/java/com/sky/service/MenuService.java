@@ -0,0 +1,14 @@
+package com.sky.service;
+
+import com.sky.vo.MenuCategoryVO;
+
+import java.util.List;
+
+public interface MenuService {
+
+    /**
+     * 查询完整菜单:启用的分类,以及分类下起售的菜品和套餐
+     * @return
+     */
+    List<MenuCategoryVO> listMenu();
+}
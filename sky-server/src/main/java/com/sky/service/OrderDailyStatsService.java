@@ -0,0 +1,52 @@
+package com.sky.service;
+
+import com.sky.dto.DailyStatsDTO;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface OrderDailyStatsService {
+
+    /**
+     * 查询日期区间内的每日营业数据,已结束的日期读取汇总表,当天实时统计
+     * @param begin
+     * @param end
+     * @return begin到end每天一条,按日期排序
+     */
+    List<DailyStatsDTO> list(LocalDate begin, LocalDate end);
+
+    /**
+     * 订单状态变化后调用,标记订单所在日期的汇总数据需要重新统计
+     * @param orderTime 下单时间
+     */
+    void markDirty(LocalDateTime orderTime);
+
+    /**
+     * 单个订单状态变化后,在同一事务中增减订单所在日期的汇总数据
+     * @param orderId
+     * @param orderTime 下单时间,调用方没有时传null
+     * @param fromStatus 原状态
+     * @param toStatus 新状态
+     */
+    void applyTransition(Long orderId, LocalDateTime orderTime, Integer fromStatus, Integer toStatus);
+
+    /**
+     * 批量标记订单,订单所在日期在重新统计前查询
+     * @param orderIds
+     */
+    void markDirtyOrders(List<Long> orderIds);
+
+    /**
+     * 重新统计日期区间内的汇总数据
+     * @param begin
+     * @param end
+     * @return 统计结果
+     */
+    List<DailyStatsDTO> rebuild(LocalDate begin, LocalDate end);
+
+    /**
+     * 重新统计所有被标记的日期
+     */
+    void rebuildDirty();
+}
@@ -0,0 +1,16 @@
+package com.sky.service;
+
+import com.sky.dto.OrdersPageQueryDTO;
+
+import javax.servlet.http.HttpServletResponse;
+
+public interface OrderExportService {
+
+    /**
+     * 按订单搜索的条件导出订单及订单明细
+     * @param ordersPageQueryDTO
+     * @param format 导出格式 csv / xlsx
+     * @param response
+     */
+    void export(OrdersPageQueryDTO ordersPageQueryDTO, String format, HttpServletResponse response);
+}
@@ -1,12 +1,16 @@
 package com.sky.service;
 
 import com.sky.dto.*;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
 import com.sky.result.PageResult;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 
+import java.util.List;
+
 public interface OrderService {
 
     /**
@@ -16,6 +20,13 @@ public interface OrderService {
      */
     OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO);
 
+    /**
+     * 保存订单及订单明细
+     * @param orders
+     * @param orderDetails
+     */
+    void saveOrder(Orders orders, List<OrderDetail> orderDetails);
+
 
 
 
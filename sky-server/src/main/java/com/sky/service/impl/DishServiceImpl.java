@@ -2,6 +2,7 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cache.CatalogCache;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.dto.DishDTO;
@@ -22,7 +23,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -34,6 +39,8 @@ public class DishServiceImpl implements DishService {
     private DishFlavorMapper dishFlavorMapper;
     @Autowired
     private SetmealDishMapper setmealDishMapper;
+    @Autowired
+    private CatalogCache catalogCache;
 
     /**
      * 新增菜品和对应的口味
@@ -105,6 +112,7 @@ public class DishServiceImpl implements DishService {
         dishMapper.deleteByIds(ids);
         // 删除菜品关联的口味数据
         dishFlavorMapper.deleteByDishIds(ids);
+        catalogCache.evictDishes(ids);
     }
 
     /**
@@ -118,7 +126,8 @@ public class DishServiceImpl implements DishService {
         // 根据ip查询菜品数据
         Dish dish = dishMapper.getById(id);
         // 根据id查询口味数据
-        List<DishFlavor> dishFlavors = dishFlavorMapper.getByDishId(id);
+        List<DishFlavor> dishFlavors = getFlavorMap(Collections.singletonList(id))
+                .getOrDefault(id, new ArrayList<>());
         // 封装到vo
         DishVO dishVO = new DishVO();
         BeanUtils.copyProperties(dish,dishVO);
@@ -148,6 +157,7 @@ public class DishServiceImpl implements DishService {
             });
             dishFlavorMapper.inserBatch(dishFlavors);
         }
+        catalogCache.evictDishes(Collections.singletonList(dishDTO.getId()));
     }
 
 
@@ -162,12 +172,16 @@ public class DishServiceImpl implements DishService {
 
         List<DishVO> dishVOList = new ArrayList<>();
 
+        //一次查出所有菜品的口味,避免逐个菜品查询
+        List<Long> dishIds = dishList.stream().map(Dish::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = getFlavorMap(dishIds);
+
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             BeanUtils.copyProperties(d,dishVO);
 
-            //根据菜品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
+            //根据菜品id取出对应的口味
+            List<DishFlavor> flavors = flavorMap.getOrDefault(d.getId(), new ArrayList<>());
 
             dishVO.setFlavors(flavors);
             dishVOList.add(dishVO);
@@ -176,6 +190,19 @@ public class DishServiceImpl implements DishService {
         return dishVOList;
     }
 
+    /**
+     * 批量查询菜品口味,按菜品id分组
+     * @param dishIds
+     * @return
+     */
+    private Map<Long, List<DishFlavor>> getFlavorMap(List<Long> dishIds) {
+        if (dishIds == null || dishIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<DishFlavor> flavors = dishFlavorMapper.getByDishIds(dishIds);
+        return flavors.stream().collect(Collectors.groupingBy(DishFlavor::getDishId));
+    }
+
     /**
      * 菜品起售停售
      * @param status
@@ -188,7 +215,19 @@ public class DishServiceImpl implements DishService {
                 .id(id)
                 .build();
         dishMapper.update(dish);
+        catalogCache.evictDishes(Collections.singletonList(id));
     }
 
-
+    /**
+     * 查询菜品所属的分类id
+     * @param ids
+     * @return
+     */
+    @Override
+    public List<Long> getCategoryIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return dishMapper.getCategoryIdsByIds(ids);
+    }
 }
@@ -0,0 +1,87 @@
+package com.sky.service.impl;
+
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Category;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.SetmealDish;
+import com.sky.mapper.CategoryMapper;
+import com.sky.mapper.SetmealDishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.service.DishService;
+import com.sky.service.MenuService;
+import com.sky.vo.DishVO;
+import com.sky.vo.MenuCategoryVO;
+import com.sky.vo.SetmealVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 完整菜单查询
+ */
+@Service
+@Slf4j
+public class MenuServiceImpl implements MenuService {
+
+    @Autowired
+    private CategoryMapper categoryMapper;
+    @Autowired
+    private DishService dishService;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private SetmealDishMapper setmealDishMapper;
+
+    /**
+     * 查询完整菜单,分类、菜品、口味、套餐、套餐菜品各查询一次
+     *
+     * @return
+     */
+    public List<MenuCategoryVO> listMenu() {
+        // 启用的分类
+        List<Category> categoryList = categoryMapper.list(null);
+
+        // 起售中的菜品及口味,按分类分组
+        Dish dish = new Dish();
+        dish.setStatus(StatusConstant.ENABLE);
+        Map<Long, List<DishVO>> dishMap = dishService.listWithFlavor(dish).stream()
+                .collect(Collectors.groupingBy(DishVO::getCategoryId));
+
+        // 起售中的套餐及包含的菜品,按分类分组
+        Setmeal setmeal = new Setmeal();
+        setmeal.setStatus(StatusConstant.ENABLE);
+        List<Setmeal> setmealList = setmealMapper.list(setmeal);
+        Map<Long, List<SetmealDish>> setmealDishMap = Collections.emptyMap();
+        if (!setmealList.isEmpty()) {
+            List<Long> setmealIds = setmealList.stream().map(Setmeal::getId).collect(Collectors.toList());
+            setmealDishMap = setmealDishMapper.getBySetmealIds(setmealIds).stream()
+                    .collect(Collectors.groupingBy(SetmealDish::getSetmealId));
+        }
+        Map<Long, List<SetmealVO>> setmealMap = new HashMap<>();
+        for (Setmeal s : setmealList) {
+            SetmealVO setmealVO = new SetmealVO();
+            BeanUtils.copyProperties(s, setmealVO);
+            setmealVO.setSetmealDishes(setmealDishMap.getOrDefault(s.getId(), new ArrayList<>()));
+            setmealMap.computeIfAbsent(s.getCategoryId(), k -> new ArrayList<>()).add(setmealVO);
+        }
+
+        List<MenuCategoryVO> menu = new ArrayList<>();
+        for (Category category : categoryList) {
+            MenuCategoryVO menuCategoryVO = new MenuCategoryVO();
+            BeanUtils.copyProperties(category, menuCategoryVO);
+            menuCategoryVO.setDishes(dishMap.getOrDefault(category.getId(), new ArrayList<>()));
+            menuCategoryVO.setSetmeals(setmealMap.getOrDefault(category.getId(), new ArrayList<>()));
+            menu.add(menuCategoryVO);
+        }
+        return menu;
+    }
+}
@@ -0,0 +1,251 @@
+package com.sky.service.impl;
+
+import com.sky.cache.ReportCache;
+import com.sky.cache.SalesRanking;
+import com.sky.dto.DailyStatsDTO;
+import com.sky.mapper.OrderDailyStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.service.OrderDailyStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class OrderDailyStatsServiceImpl implements OrderDailyStatsService {
+
+    // 需要重新统计的日期集合
+    private static final String DIRTY = "order_daily_stats_dirty";
+    // 状态变化后尚未确定日期的订单id集合
+    private static final String DIRTY_ORDERS = "order_daily_stats_dirty_orders";
+    // 每次重新统计的最多日期数
+    private static final int REBUILD_BATCH = 50;
+
+    @Autowired
+    private OrderDailyStatsMapper orderDailyStatsMapper;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private UserMapper userMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ReportCache reportCache;
+    @Autowired
+    private SalesRanking salesRanking;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 查询日期区间内的每日营业数据,已结束的日期读取汇总表,当天实时统计
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    public List<DailyStatsDTO> list(LocalDate begin, LocalDate end) {
+        LocalDate today = LocalDate.now();
+        List<DailyStatsDTO> list = new ArrayList<>();
+        if (begin.isBefore(today)) {
+            LocalDate closedEnd = end.isBefore(today) ? end : today.minusDays(1);
+            List<DailyStatsDTO> closed = orderDailyStatsMapper.list(begin, closedEnd);
+            if (closed.size() < ChronoUnit.DAYS.between(begin, closedEnd) + 1) {
+                closed = fillMissing(closed, begin, closedEnd);
+            }
+            list.addAll(closed);
+        }
+        if (!end.isBefore(today)) {
+            list.addAll(compute(begin.isAfter(today) ? begin : today, end));
+        }
+        return list;
+    }
+
+    /**
+     * 补齐汇总表中缺少的日期(如汇总表上线前的数据),只重新统计缺少的日期,连续缺少的日期一起统计后写入
+     *
+     * @param closed 汇总表中已有的数据,按日期排序
+     * @param begin
+     * @param end
+     * @return begin到end每天一条,按日期排序
+     */
+    private List<DailyStatsDTO> fillMissing(List<DailyStatsDTO> closed, LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyStatsDTO> byDate = closed.stream()
+                .collect(Collectors.toMap(DailyStatsDTO::getDate, Function.identity()));
+        List<DailyStatsDTO> list = new ArrayList<>();
+        LocalDate missingBegin = null;
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyStatsDTO row = byDate.get(date);
+            if (row == null) {
+                if (missingBegin == null) {
+                    missingBegin = date;
+                }
+                continue;
+            }
+            if (missingBegin != null) {
+                list.addAll(rebuild(missingBegin, date.minusDays(1)));
+                missingBegin = null;
+            }
+            list.add(row);
+        }
+        if (missingBegin != null) {
+            list.addAll(rebuild(missingBegin, end));
+        }
+        return list;
+    }
+
+    /**
+     * 标记订单所在日期需要重新统计,当天的数据实时统计,无需标记
+     *
+     * @param orderTime
+     */
+    public void markDirty(LocalDateTime orderTime) {
+        LocalDate date = orderTime.toLocalDate();
+        if (date.isBefore(LocalDate.now())) {
+            stringRedisTemplate.opsForSet().add(DIRTY, date.toString());
+        }
+    }
+
+    /**
+     * 单个订单状态变化后增减订单所在日期的汇总数据,只修改一行,不重新统计整天的订单
+     * 当天的数据实时统计,无需修改;已修改的日期在事务提交后清理报表缓存
+     *
+     * @param orderId
+     * @param orderTime
+     * @param fromStatus
+     * @param toStatus
+     */
+    public void applyTransition(Long orderId, LocalDateTime orderTime, Integer fromStatus, Integer toStatus) {
+        LocalDateTime today = LocalDate.now().atStartOfDay();
+        if (fromStatus == null || orderTime != null && !orderTime.isBefore(today)) {
+            return;
+        }
+        if (orderDailyStatsMapper.applyTransition(orderId, fromStatus, toStatus, today) == 0) {
+            // 当天的订单,或汇总表中还没有该日期
+            return;
+        }
+        LocalDate date = orderTime != null ? orderTime.toLocalDate()
+                : orderMapper.getOrderDatesByIds(Collections.singletonList(orderId)).get(0);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reportCache.evict(date, date);
+                }
+            });
+        } else {
+            reportCache.evict(date, date);
+        }
+    }
+
+    /**
+     * 批量标记订单需要重新统计,一次写入redis
+     *
+     * @param orderIds
+     */
+    public void markDirtyOrders(List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        String[] members = orderIds.stream().map(String::valueOf).toArray(String[]::new);
+        stringRedisTemplate.opsForSet().add(DIRTY_ORDERS, members);
+    }
+
+    /**
+     * 重新统计日期区间内的汇总数据
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    public List<DailyStatsDTO> rebuild(LocalDate begin, LocalDate end) {
+        List<DailyStatsDTO> list = transactionTemplate.execute(status -> {
+            // 先锁定已有的日期,统计期间提交的增量修改等待统计结果写入后再执行,不会被覆盖
+            orderDailyStatsMapper.lockRange(begin, end);
+            List<DailyStatsDTO> computed = compute(begin, end);
+            orderDailyStatsMapper.upsertBatch(computed);
+            return computed;
+        });
+        reportCache.evict(begin, end);
+        salesRanking.evict(begin, end);
+        log.info("重新统计每日营业数据:{}至{}", begin, end);
+        return list;
+    }
+
+    /**
+     * 重新统计所有被标记的日期
+     */
+    public void rebuildDirty() {
+        // 先将被标记的订单转换为日期
+        List<String> orderIds;
+        do {
+            orderIds = stringRedisTemplate.opsForSet().pop(DIRTY_ORDERS, REBUILD_BATCH * 10);
+            if (orderIds == null || orderIds.isEmpty()) {
+                break;
+            }
+            List<Long> ids = orderIds.stream().map(Long::valueOf).collect(Collectors.toList());
+            orderMapper.getOrderDatesByIds(ids).forEach(date -> markDirty(date.atStartOfDay()));
+        } while (orderIds.size() == REBUILD_BATCH * 10);
+
+        List<String> dates;
+        do {
+            dates = stringRedisTemplate.opsForSet().pop(DIRTY, REBUILD_BATCH);
+            if (dates == null || dates.isEmpty()) {
+                return;
+            }
+            for (String date : dates) {
+                LocalDate day = LocalDate.parse(date);
+                rebuild(day, day);
+            }
+        } while (dates.size() == REBUILD_BATCH);
+    }
+
+    /**
+     * 从orders和user表按天统计,一次查询整个区间,没有数据的日期补0
+     *
+     * @param begin
+     * @param end
+     * @return begin到end每天一条,按日期排序
+     */
+    private List<DailyStatsDTO> compute(LocalDate begin, LocalDate end) {
+        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
+        LocalDateTime endTime = LocalDateTime.of(end, LocalTime.MAX);
+        Map<LocalDate, DailyStatsDTO> orderStats = orderMapper.sumByDate(beginTime, endTime).stream()
+                .collect(Collectors.toMap(DailyStatsDTO::getDate, Function.identity()));
+        Map<LocalDate, Integer> newUsers = userMapper.countByDate(beginTime, endTime).stream()
+                .collect(Collectors.toMap(DailyStatsDTO::getDate, DailyStatsDTO::getNewUsers));
+
+        List<DailyStatsDTO> list = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyStatsDTO row = orderStats.get(date);
+            list.add(DailyStatsDTO.builder()
+                    .date(date)
+                    .turnover(row == null || row.getTurnover() == null ? 0.0 : row.getTurnover())
+                    .orderCount(row == null ? 0 : row.getOrderCount())
+                    .validOrderCount(row == null ? 0 : row.getValidOrderCount())
+                    .cancelledOrderCount(row == null ? 0 : row.getCancelledOrderCount())
+                    .pendingPaymentCount(row == null ? 0 : row.getPendingPaymentCount())
+                    .toBeConfirmedCount(row == null ? 0 : row.getToBeConfirmedCount())
+                    .confirmedCount(row == null ? 0 : row.getConfirmedCount())
+                    .deliveryInProgressCount(row == null ? 0 : row.getDeliveryInProgressCount())
+                    .newUsers(newUsers.getOrDefault(date, 0))
+                    .build());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,180 @@
+package com.sky.service.impl;
+
+import com.sky.dto.OrderExportDTO;
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.mapper.OrderMapper;
+import com.sky.service.OrderExportService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 订单导出:通过MyBatis游标逐行读取,边读边写入响应,内存占用与订单数量无关
+ */
+@Service
+@Slf4j
+public class OrderExportServiceImpl implements OrderExportService {
+
+    public static final String CSV = "csv";
+    public static final String XLSX = "xlsx";
+
+    private static final String[] HEADERS = {"订单id", "订单号", "订单状态", "用户id", "下单时间", "结账时间", "支付状态",
+            "实收金额", "收货人", "手机号", "地址", "备注", "菜品/套餐", "口味", "数量", "金额"};
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // xlsx每个sheet最多写入的行数(不含表头),超过后写入新的sheet
+    private static final int XLSX_ROWS_PER_SHEET = 1000000;
+    // 用户填写的文本列:收货人、手机号、地址、备注、菜品/套餐、口味
+    private static final int[] USER_TEXT_COLUMNS = {8, 9, 10, 11, 12, 13};
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    /**
+     * 导出订单,游标需要在事务中才能保持连接打开
+     *
+     * @param ordersPageQueryDTO
+     * @param format
+     * @param response
+     */
+    @Transactional(readOnly = true)
+    public void export(OrdersPageQueryDTO ordersPageQueryDTO, String format, HttpServletResponse response) {
+        boolean xlsx = XLSX.equalsIgnoreCase(format);
+        response.setContentType(xlsx ? "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"
+                : "text/csv;charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=orders." + (xlsx ? XLSX : CSV));
+        long count;
+        try (Cursor<OrderExportDTO> cursor = orderMapper.exportCursor(ordersPageQueryDTO)) {
+            OutputStream out = response.getOutputStream();
+            count = xlsx ? writeXlsx(cursor, out) : writeCsv(cursor, out);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("导出订单明细{}行,格式:{}", count, xlsx ? XLSX : CSV);
+    }
+
+    private long writeCsv(Cursor<OrderExportDTO> cursor, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        // BOM,便于Excel正确识别UTF-8编码
+        writer.write('\uFEFF');
+        writeCsvLine(writer, HEADERS);
+        long count = 0;
+        for (OrderExportDTO row : cursor) {
+            String[] values = values(row);
+            for (int i : USER_TEXT_COLUMNS) {
+                values[i] = escapeFormula(values[i]);
+            }
+            writeCsvLine(writer, values);
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private long writeXlsx(Cursor<OrderExportDTO> cursor, OutputStream out) throws IOException {
+        // 内存中最多保留500行,其余行压缩后写入临时文件
+        SXSSFWorkbook excel = new SXSSFWorkbook(500);
+        excel.setCompressTempFiles(true);
+        try {
+            Sheet sheet = null;
+            int rowIndex = 0;
+            long count = 0;
+            for (OrderExportDTO row : cursor) {
+                if (sheet == null || rowIndex > XLSX_ROWS_PER_SHEET) {
+                    sheet = excel.createSheet("订单" + (excel.getNumberOfSheets() + 1));
+                    writeXlsxRow(sheet.createRow(0), HEADERS);
+                    rowIndex = 1;
+                }
+                writeXlsxRow(sheet.createRow(rowIndex++), values(row));
+                count++;
+            }
+            if (sheet == null) {
+                writeXlsxRow(excel.createSheet("订单1").createRow(0), HEADERS);
+            }
+            excel.write(out);
+            return count;
+        } finally {
+            // 删除临时文件
+            excel.dispose();
+        }
+    }
+
+    private void writeXlsxRow(Row row, String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            row.createCell(i).setCellValue(values[i]);
+        }
+    }
+
+    /**
+     * 以 = + - @ 等开头的文本在Excel中会被当作公式执行,前面加单引号作为普通文本
+     *
+     * @param value
+     * @return
+     */
+    static String escapeFormula(String value) {
+        if (value.isEmpty()) {
+            return value;
+        }
+        char first = value.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r') {
+            return "'" + value;
+        }
+        return value;
+    }
+
+    static void writeCsvLine(Writer writer, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String value = values[i];
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(value);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private String[] values(OrderExportDTO row) {
+        return new String[]{
+                str(row.getId()),
+                str(row.getNumber()),
+                str(row.getStatus()),
+                str(row.getUserId()),
+                row.getOrderTime() == null ? "" : TIME_FORMAT.format(row.getOrderTime()),
+                row.getCheckoutTime() == null ? "" : TIME_FORMAT.format(row.getCheckoutTime()),
+                str(row.getPayStatus()),
+                str(row.getAmount()),
+                str(row.getConsignee()),
+                str(row.getPhone()),
+                str(row.getAddress()),
+                str(row.getRemark()),
+                str(row.getItemName()),
+                str(row.getDishFlavor()),
+                str(row.getItemNumber()),
+                str(row.getItemAmount())
+        };
+    }
+
+    private String str(Object value) {
+        return value == null ? "" : value.toString();
+    }
+}
@@ -4,6 +4,9 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cache.CatalogCache;
+import com.sky.cache.CatalogItem;
+import com.sky.cart.ShoppingCartStore;
 import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.*;
@@ -12,15 +15,21 @@ import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.order.OrderStateMachine;
+import com.sky.order.OrderStatusCounter;
+import com.sky.order.OrderSubmitPipeline;
+import com.sky.order.OrderTimeoutQueue;
+import com.sky.order.OrderTransition;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
+import com.sky.utils.SnowflakeIdGenerator;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
-import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.OrderEventBroadcaster;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.util.Json;
 import lombok.extern.slf4j.Slf4j;
@@ -49,7 +58,7 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartStore shoppingCartStore;
     @Autowired
     private WeChatPayUtil weChatPayUtil;
     @Autowired
@@ -57,7 +66,19 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private OrderService orderService;
     @Autowired
-    private WebSocketServer webSocketServer;
+    private OrderEventBroadcaster orderEventBroadcaster;
+    @Autowired
+    private CatalogCache catalogCache;
+    @Autowired
+    private SnowflakeIdGenerator orderNumberGenerator;
+    @Autowired
+    private OrderSubmitPipeline orderSubmitPipeline;
+    @Autowired
+    private OrderTimeoutQueue orderTimeoutQueue;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
 
     /**
      * 用户下单
@@ -76,38 +97,42 @@ public class OrderServiceImpl implements OrderService {
         // 查询当前用户购物车
         Long currentId = BaseContext.getCurrentId();
 
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(currentId);
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = shoppingCartStore.list(currentId);
         if (shoppingCartList == null || shoppingCartList.size() == 0) {
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
         }
 
-        // 向订单表插入一条数据
+        // 构造订单数据
         Orders orders = new Orders();
         BeanUtils.copyProperties(ordersSubmitDTO, orders);
         orders.setOrderTime(LocalDateTime.now());
         orders.setPayStatus(Orders.UN_PAID);
         orders.setStatus(Orders.PENDING_PAYMENT);
-        orders.setNumber(String.valueOf(System.currentTimeMillis())); // 订单号
+        orders.setNumber(String.valueOf(orderNumberGenerator.nextId())); // 订单号
         orders.setPhone(addressBook.getPhone());
         orders.setConsignee(addressBook.getConsignee());
         orders.setUserId(currentId);
         orders.setAddress(addressBook.getDetail());
 
-        orderMapper.insert(orders);
         ArrayList<OrderDetail> orderDetaillist = new ArrayList<>();
-        // 向订单明细表插入n条数据
+        // 订单明细
         for (ShoppingCart cart : shoppingCartList) {
             OrderDetail orderDetail = new OrderDetail();// 订单明细
             BeanUtils.copyProperties(cart, orderDetail);
-            orderDetail.setOrderId(orders.getId());// 设置当前订单明细关联的订单ID
             orderDetaillist.add(orderDetail);
         }
-        orderDetialMapper.insertBatch(orderDetaillist);
+        if (orderSubmitPipeline.isEnabled()) {
+            // 批量提交:与同一时间的其它订单合并写入
+            orderSubmitPipeline.submit(orders, orderDetaillist);
+        } else {
+            orderService.saveOrder(orders, orderDetaillist);
+        }
+        orderStatusCounter.move(null, Orders.PENDING_PAYMENT, 1);
+        // 加入超时队列,超时未支付时自动取消
+        orderTimeoutQueue.add(orders.getId(), orders.getOrderTime());
 
         // 清空当前购物车
-        shoppingCartMapper.deleteByUserId(currentId);
+        shoppingCartStore.clean(currentId);
         // 封装VO返回结果
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
                 .id(orders.getId())
@@ -118,6 +143,21 @@ public class OrderServiceImpl implements OrderService {
         return orderSubmitVO;
     }
 
+    /**
+     * 保存订单及订单明细
+     *
+     * @param orders
+     * @param orderDetails
+     */
+    @Transactional
+    public void saveOrder(Orders orders, List<OrderDetail> orderDetails) {
+        // 向订单表插入一条数据
+        orderMapper.insert(orders);
+        // 向订单明细表插入n条数据
+        orderDetails.forEach(orderDetail -> orderDetail.setOrderId(orders.getId()));// 设置当前订单明细关联的订单ID
+        orderDetialMapper.insertBatch(orderDetails);
+    }
+
     /**
      * 订单支付
      *
@@ -128,7 +168,17 @@ public class OrderServiceImpl implements OrderService {
         // 当前登录用户id
         Long userId = BaseContext.getCurrentId();
         User user = userMapper.getById(userId);
-        orderMapper.pay(ordersPaymentDTO.getOrderNumber());
+        Orders ordersDB = orderMapper.getByNumber(ordersPaymentDTO.getOrderNumber());
+        if (ordersDB == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+        // 没有真实的支付回调,直接修改为已支付,由状态机更新状态计数、移出超时队列
+        Orders orders = Orders.builder()
+                .id(ordersDB.getId())
+                .payStatus(Orders.PAID)
+                .checkoutTime(LocalDateTime.now())
+                .build();
+        orderStateMachine.fire(OrderTransition.PAY, orders, ordersDB);
 
 
         // 调用微信支付接口，生成预支付交易单
@@ -156,25 +206,25 @@ public class OrderServiceImpl implements OrderService {
     public void paySuccess(String outTradeNo) {
 
         // 根据订单号查询订单
-        Orders ordersDB = orderMapper.getByorderNumber(Long.valueOf(outTradeNo));
-
-        // 根据订单id更新订单的状态、支付方式、支付状态、结账时间
-        Orders orders = Orders.builder()
-                .id(ordersDB.getId())
-                .status(Orders.TO_BE_CONFIRMED)
-                .payStatus(Orders.PAID)
-                .checkoutTime(LocalDateTime.now())
-                .build();
-
-        orderMapper.update(orders);
-        // 通过websocket向客户端浏览器推送消息 type order content
+        Orders ordersDB = orderMapper.getByNumber(outTradeNo);
+
+        // 根据订单id更新订单的状态、支付方式、支付状态、结账时间,重复的支付通知不再修改
+        if (Orders.PENDING_PAYMENT.equals(ordersDB.getStatus())) {
+            Orders orders = Orders.builder()
+                    .id(ordersDB.getId())
+                    .payStatus(Orders.PAID)
+                    .checkoutTime(LocalDateTime.now())
+                    .build();
+            orderStateMachine.fire(OrderTransition.PAY, orders, ordersDB);
+        }
+        // 通过websocket向所有节点的客户端浏览器推送消息 type order content
         Map map = new HashMap();
         map.put("type", 1); // 1 表示来单提醒 2 表示客户催单
         map.put("order", ordersDB.getId());
         map.put("content", "订单号:" + outTradeNo);
 
         String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        orderEventBroadcaster.broadcast(json);
 
     }
 
@@ -187,8 +237,8 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public OrderVO details(Long id) {
-        // 根据订单号查询订单
-        Orders ordersDB = orderMapper.getByNumber(String.valueOf(id));
+        // 根据订单id查询订单
+        Orders ordersDB = orderMapper.getById(id);
         // 查询订单对应的菜品/套餐明细
         List<OrderDetail> orderDetailList = orderDetialMapper.getByOrderId(ordersDB.getId());
         // 封装数据
@@ -220,14 +270,12 @@ public class OrderServiceImpl implements OrderService {
         List<OrderVO> list = new ArrayList<>();
         // 查出明细,并封装
         if (page != null && page.getTotal() > 0) {
+            // 一次查询本页所有订单的明细
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(page);
             for (Orders orders : page) {
-                Long orderId = orders.getId();
-
-                // 查询订单明细
-                List<OrderDetail> orderDetails = orderDetialMapper.getByOrderId(orderId);
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);
-                orderVO.setOrderDetailList(orderDetails);
+                orderVO.setOrderDetailList(orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()));
                 list.add(orderVO);
             }
         }
@@ -243,39 +291,26 @@ public class OrderServiceImpl implements OrderService {
      */
     public void userCancelById(Long id) throws Exception {
         // 根据id查询订单
-        Orders ordersDB = orderMapper.getByNumber(String.valueOf(id));
+        Orders ordersDB = orderMapper.getById(id);
 
         // 校验订单是否存在
         if (ordersDB == null) {
             throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
         }
 
-        // 订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
-        if (ordersDB.getStatus() > 2) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
         Orders orders = new Orders();
         orders.setId(ordersDB.getId());
 
-        // 订单处于待接单状态下取消，需要进行退款
+        // 订单处于待接单状态下取消，需要进行退款，由状态机退款
         if (ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            // 调用微信支付退款接口
-            weChatPayUtil.refund(
-                    ordersDB.getNumber(), // 商户订单号
-                    ordersDB.getNumber(), // 商户退款单号
-                    new BigDecimal(0.01),// 退款金额，单位 元
-                    new BigDecimal(0.01));// 原订单金额
-
             // 支付状态修改为 退款
             orders.setPayStatus(Orders.REFUND);
         }
 
-        // 更新订单状态、取消原因、取消时间
-        orders.setStatus(Orders.CANCELLED);
+        // 更新订单状态、取消原因、取消时间,订单 1待付款 2待接单 时才能取消
         orders.setCancelReason("用户取消");
         orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+        orderStateMachine.fire(OrderTransition.USER_CANCEL, orders, ordersDB);
     }
 
 
@@ -297,14 +332,23 @@ public class OrderServiceImpl implements OrderService {
 
             // 将原订单详情里面的菜品信息重新复制到购物车对象中
             BeanUtils.copyProperties(x, shoppingCart, "id");
+            // 名称、图片、价格以菜品或套餐当前的信息为准
+            CatalogItem item = x.getDishId() != null
+                    ? catalogCache.getDish(x.getDishId())
+                    : catalogCache.getSetmeal(x.getSetmealId());
+            if (item != null) {
+                shoppingCart.setName(item.getName());
+                shoppingCart.setImage(item.getImage());
+                shoppingCart.setAmount(item.getPrice());
+            }
             shoppingCart.setUserId(userId);
             shoppingCart.setCreateTime(LocalDateTime.now());
 
             return shoppingCart;
         }).collect(Collectors.toList());
 
-        // 将购物车对象批量添加到数据库
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        // 将购物车对象批量添加到购物车
+        shoppingCartStore.addBatch(shoppingCartList);
 
     }
 
@@ -368,11 +412,13 @@ public class OrderServiceImpl implements OrderService {
 
         List<Orders> ordersList = page.getResult();
         if (!CollectionUtils.isEmpty(ordersList)) {
+            // 一次查询本页所有订单的明细
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersList);
             for (Orders orders : ordersList) {
                 // 将共同字段复制到OrderVO
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);
-                String orderDishes = getOrderDishesStr(orders);
+                String orderDishes = getOrderDishesStr(orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()));
 
                 // 将订单菜品信息封装到orderVO中，并添加到orderVOList
                 orderVO.setOrderDishes(orderDishes);
@@ -383,15 +429,27 @@ public class OrderServiceImpl implements OrderService {
     }
 
     /**
-     * 根据订单id获取菜品信息字符串
+     * 批量查询订单明细,按订单id分组
      *
-     * @param orders
+     * @param ordersList
      * @return
      */
-    private String getOrderDishesStr(Orders orders) {
-        // 查询订单菜品详情信息（订单中的菜品和数量）
-        List<OrderDetail> orderDetailList = orderDetialMapper.getByOrderId(orders.getId());
+    private Map<Long, List<OrderDetail>> getOrderDetailMap(List<Orders> ordersList) {
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        if (orderIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<OrderDetail> orderDetails = orderDetialMapper.getByOrderIds(orderIds);
+        return orderDetails.stream().collect(Collectors.groupingBy(OrderDetail::getOrderId));
+    }
 
+    /**
+     * 根据订单明细获取菜品信息字符串
+     *
+     * @param orderDetailList 订单菜品详情信息（订单中的菜品和数量）
+     * @return
+     */
+    private String getOrderDishesStr(List<OrderDetail> orderDetailList) {
         // 将每一条订单菜品信息拼接为字符串（格式：宫保鸡丁*3；）
         List<String> orderDishList = orderDetailList.stream().map(x -> {
             String orderDish = x.getName() + "*" + x.getNumber() + ";";
@@ -410,10 +468,10 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public OrderStatisticsVO statistics() {
-        // 根据状态，分别查询出待接单、待派送、派送中的订单数量
-        Integer toBeConfirmed = orderMapper.countStatus(Orders.TO_BE_CONFIRMED);
-        Integer confirmed = orderMapper.countStatus(Orders.CONFIRMED);
-        Integer deliveryInProgress = orderMapper.countStatus(Orders.DELIVERY_IN_PROGRESS);
+        // 读取计数器中待接单、待派送、派送中的订单数量,不查询数据库
+        Integer toBeConfirmed = orderStatusCounter.get(Orders.TO_BE_CONFIRMED);
+        Integer confirmed = orderStatusCounter.get(Orders.CONFIRMED);
+        Integer deliveryInProgress = orderStatusCounter.get(Orders.DELIVERY_IN_PROGRESS);
 
         // 将查询出的数据封装到orderStatisticsVO中响应
         OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
@@ -429,12 +487,12 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersConfirmDTO
      */
     public void confirm(OrdersConfirmDTO ordersConfirmDTO) {
+        // 订单只有状态为2（待接单）才可以接单
         Orders orders = Orders.builder()
                 .id(ordersConfirmDTO.getId())
-                .status(Orders.CONFIRMED)
                 .build();
 
-        orderMapper.update(orders);
+        orderStateMachine.fire(OrderTransition.CONFIRM, orders, null);
     }
 
     /**
@@ -443,42 +501,15 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersRejectionDTO
      */
     public void rejection(OrdersRejectionDTO ordersRejectionDTO) throws Exception {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(ordersRejectionDTO.getId());
-
-        // 订单只有存在且状态为2（待接单）才可以拒单
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
-        // 支付状态
-        Integer payStatus = ordersDB.getPayStatus();
-        if (payStatus == Orders.PAID) {
-            // 用户已支付，需要退款
-            String refund = weChatPayUtil.refund(
-                    ordersDB.getNumber(),
-                    ordersDB.getNumber(),
-                    new BigDecimal(0.01),
-                    new BigDecimal(0.01));
-            log.info("申请退款：{}", refund);
-
-        }
-
-        // 拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间
+        // 订单只有存在且状态为2（待接单）才可以拒单，已支付的订单由状态机退款
+        // 根据订单id更新订单状态、拒单原因、取消时间
         Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        orders.setStatus(Orders.CANCELLED);
+        orders.setId(ordersRejectionDTO.getId());
         orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
         orders.setCancelTime(LocalDateTime.now());
 
-        orderMapper.update(orders);
+        orderStateMachine.fire(OrderTransition.REJECT, orders, null);
     }
-    /**
-     * 取消订单
-     *
-     * @return
-     */
-
 
     /**
      * 取消订单
@@ -486,28 +517,14 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersCancelDTO
      */
     public void cancel(OrdersCancelDTO ordersCancelDTO) throws Exception {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(ordersCancelDTO.getId());
-
-        // 支付状态
-        Integer payStatus = ordersDB.getPayStatus();
-        if (payStatus == 1) {
-            // 用户已支付，需要退款
-            String refund = weChatPayUtil.refund(
-                    ordersDB.getNumber(),
-                    ordersDB.getNumber(),
-                    new BigDecimal(0.01),
-                    new BigDecimal(0.01));
-            log.info("申请退款：{}", refund);
-        }
-
-        // 管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
+        // 管理端取消订单，已支付的订单由状态机退款
+        // 根据订单id更新订单状态、取消原因、取消时间
         Orders orders = new Orders();
         orders.setId(ordersCancelDTO.getId());
-        orders.setStatus(Orders.CANCELLED);
         orders.setCancelReason(ordersCancelDTO.getCancelReason());
         orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+
+        orderStateMachine.fire(OrderTransition.ADMIN_CANCEL, orders, null);
     }
 
     /**
@@ -516,20 +533,11 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      */
     public void delivery(Long id) {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(id);
-
-        // 校验订单是否存在，并且状态为3
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.CONFIRMED)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
+        // 订单只有状态为3（已接单）才可以派送，状态转为派送中
         Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        // 更新订单状态,状态转为派送中
-        orders.setStatus(Orders.DELIVERY_IN_PROGRESS);
+        orders.setId(id);
 
-        orderMapper.update(orders);
+        orderStateMachine.fire(OrderTransition.DELIVER, orders, null);
     }
 
     /**
@@ -538,22 +546,12 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      */
     public void complete(Long id) {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(id);
-
-        // 校验订单是否存在，并且状态为4
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.DELIVERY_IN_PROGRESS)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
+        // 订单只有状态为4（派送中）才可以完成，状态转为完成
         Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        // 更新订单状态,状态转为完成
-        orders.setStatus(Orders.COMPLETED);
+        orders.setId(id);
         orders.setDeliveryTime(LocalDateTime.now());
 
-        orderMapper.update(orders);
-
+        orderStateMachine.fire(OrderTransition.COMPLETE, orders, null);
     }
 
     /**
@@ -572,7 +570,7 @@ public class OrderServiceImpl implements OrderService {
         map.put("type",2);
         map.put("orderId",id);
         map.put("content","订单号:"+ordersDB.getNumber());
-        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+        orderEventBroadcaster.broadcast(JSON.toJSONString(map));
     }
 }
 
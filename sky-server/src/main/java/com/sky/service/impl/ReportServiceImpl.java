@@ -1,28 +1,38 @@
 package com.sky.service.impl;
 
+import com.sky.cache.ReportCache;
+import com.sky.cache.SalesRanking;
+import com.sky.dto.DailyStatsDTO;
 import com.sky.dto.GoodsSalesDTO;
-import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.service.OrderDailyStatsService;
 import com.sky.service.ReportService;
-import com.sky.service.WorkspaceService;
 import com.sky.vo.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.streaming.SXSSFCell;
+import org.apache.poi.xssf.streaming.SXSSFRow;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,12 +42,26 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ReportServiceImpl implements ReportService {
 
+    // 运营数据报表模板
+    private static final String TEMPLATE = "template/运营数据报表模板.xlsx";
+    // 模板中明细数据的起始行(第8行)
+    private static final int DETAIL_FIRST_ROW = 7;
+    // 明细数据的列数,从第2列开始
+    private static final int DETAIL_COLUMNS = 6;
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
     private UserMapper userMapper;
     @Autowired
-    private WorkspaceService workspaceService;
+    private OrderDailyStatsService orderDailyStatsService;
+    @Autowired
+    private ReportCache reportCache;
+    @Autowired
+    private SalesRanking salesRanking;
+
+    // 缓存的模板文件内容
+    private volatile byte[] templateBytes;
 
     /**
      * 统计指定时间内的营业额
@@ -48,27 +72,10 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
+        List<DailyStatsDTO> dailyStats = getDailyStats(begin, end);
         // 当前集合用于存放begin到end范围内的每天日期
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        while (!begin.equals(end)) {
-            // 日期计算,计算指定日期的后一天
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
-        List<Double> turnoverList = new ArrayList<>();
-        for (LocalDate localDate : dateList) {
-            // 重新localDate对应的营业额
-            LocalDateTime beginTime = LocalDateTime.of(localDate, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(localDate, LocalTime.MAX);
-            Map map = new HashMap();
-            map.put("begin", beginTime);
-            map.put("end", endTime);
-            map.put("status", Orders.COMPLETED);
-            Double turnover = orderMapper.sumByMap(map);
-            turnover = turnover == null ? 0.0 : turnover;
-            turnoverList.add(turnover);
-        }
+        List<LocalDate> dateList = dailyStats.stream().map(DailyStatsDTO::getDate).collect(Collectors.toList());
+        List<Double> turnoverList = dailyStats.stream().map(DailyStatsDTO::getTurnover).collect(Collectors.toList());
         return TurnoverReportVO
                 .builder()
                 .dateList(StringUtils.join(dateList, ","))
@@ -86,30 +93,20 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
+        List<DailyStatsDTO> dailyStats = getDailyStats(begin, end);
         // 当前集合用于存放begin到end范围内的每天日期
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        while (!begin.equals(end)) {
-            // 日期计算,计算指定日期的后一天
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        List<LocalDate> dateList = dailyStats.stream().map(DailyStatsDTO::getDate).collect(Collectors.toList());
         // 每天新增用户量
-        List<Integer> newUserList = new ArrayList<>();
-        // 总用户量
+        List<Integer> newUserList = dailyStats.stream().map(DailyStatsDTO::getNewUsers).collect(Collectors.toList());
+
+        // 总用户量:开始日期之前的用户数加上每天新增用户数的累计
+        Map map = new HashMap();
+        map.put("end", LocalDateTime.of(begin, LocalTime.MIN));
+        int totalUser = userMapper.countByMap(map);
         List<Integer> totalList = new ArrayList<>();
-        for (LocalDate localDate : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(localDate, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(localDate, LocalTime.MAX);
-            Map map = new HashMap();
-            map.put("end", endTime);
-            // 用户新增数量
-            Integer newUser = userMapper.countByMap(map);
-            map.put("begin", beginTime);
-            // 总用户数量
-            Integer totalUser = userMapper.countByMap(map);
+        for (Integer newUser : newUserList) {
+            totalUser += newUser;
             totalList.add(totalUser);
-            newUserList.add(newUser);
         }
 
         return UserReportVO
@@ -129,31 +126,17 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
+        List<DailyStatsDTO> dailyStats = getDailyStats(begin, end);
         // 当前集合用于存放begin到end范围内的每天日期
-        ArrayList<LocalDate> dataList = new ArrayList<>();
-        dataList.add(begin);
-        while (!begin.equals(end)) {
-            // 日期计算,计算指定日期的后一天
-            begin = begin.plusDays(1);
-            dataList.add(begin);
-        }
-        List<Integer> orderCountList = new ArrayList<>();
-        List<Integer> vaildOrderCountList = new ArrayList<>();
-        // 查询每天有效订单数
-        for (LocalDate localDate : dataList) {
-            // 查询每天订单总数
-            LocalDateTime beginTime = LocalDateTime.of(localDate, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(localDate, LocalTime.MAX);
-            Integer orderCount = getOrderCount(beginTime, endTime, null);
-            // 查询每天有效订单总数
-            Integer vaildOrderCount = getOrderCount(beginTime, endTime, Orders.COMPLETED);
-            orderCountList.add(orderCount);
-            vaildOrderCountList.add(vaildOrderCount);
-        }
+        List<LocalDate> dataList = dailyStats.stream().map(DailyStatsDTO::getDate).collect(Collectors.toList());
+        // 每天订单总数
+        List<Integer> orderCountList = dailyStats.stream().map(DailyStatsDTO::getOrderCount).collect(Collectors.toList());
+        // 每天有效订单数
+        List<Integer> vaildOrderCountList = dailyStats.stream().map(DailyStatsDTO::getValidOrderCount).collect(Collectors.toList());
         // 时间区间内的订单总数
-        Integer totalOrderCount = orderCountList.stream().reduce(Integer::sum).get();
+        Integer totalOrderCount = orderCountList.stream().reduce(0, Integer::sum);
         // 时间区间内的有效订单总数
-        Integer totalVaildOrederCount = vaildOrderCountList.stream().reduce(Integer::sum).get();
+        Integer totalVaildOrederCount = vaildOrderCountList.stream().reduce(0, Integer::sum);
         // 技术订单完成率
         Double orderCompletionRate = 0.0;
         if (totalOrderCount != 0) {
@@ -172,22 +155,16 @@ public class ReportServiceImpl implements ReportService {
     }
 
     /**
-     * 根据条件统计订单数量
+     * 按天查询营业数据,优先读取报表缓存
      *
      * @param begin
      * @param end
-     * @param status
-     * @return
+     * @return begin到end每天一条,按日期排序
      */
-    private Integer getOrderCount(LocalDateTime begin, LocalDateTime end, Integer status) {
-        Map map = new HashMap();
-        map.put("begin", begin);
-        map.put("end", end);
-        map.put("status", Orders.COMPLETED);
-        return orderMapper.countByMap(map);
+    private List<DailyStatsDTO> getDailyStats(LocalDate begin, LocalDate end) {
+        return reportCache.getDays(ReportCache.STATS, begin, end, orderDailyStatsService::list);
     }
 
-
     /**
      * 销量Top10
      *
@@ -197,9 +174,8 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public SalesTop10ReportVO getSalesTop10(LocalDate begin, LocalDate end) {
-        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
-        LocalDateTime endTime = LocalDateTime.of(end, LocalTime.MAX);
-        List<GoodsSalesDTO> salesTOP10 = orderMapper.getSalesTOP10(beginTime, endTime);
+        // 由每天的销量排行合并得到
+        List<GoodsSalesDTO> salesTOP10 = salesRanking.top(begin, end, 10);
 
         List<String> names = salesTOP10.stream().map(GoodsSalesDTO::getName).collect(Collectors.toList());
         String nameList = StringUtils.join(names, ",");
@@ -214,28 +190,28 @@ public class ReportServiceImpl implements ReportService {
                 .build();
     }
 
-
     /**
      * 导出运营数据报表
+     * 每天的数据来自按天汇总的统计结果,使用SXSSF流式写入,内存占用与导出天数无关
      *
+     * @param begin
+     * @param end
      * @param response
      */
     @Override
-    public void exportBusinessData(HttpServletResponse response) {
-        // 1,查询数据库 获取营业数据
-        LocalDate dateBegin = LocalDate.now().minusDays(30);
-        LocalDate dateEnd = LocalDate.now().minusDays(1);
-        BusinessDataVO businessDataVO = workspaceService.getBusinessData(LocalDateTime.of(dateBegin, LocalTime.MIN), LocalDateTime.of(dateEnd, LocalTime.MAX));
+    public void exportBusinessData(LocalDate begin, LocalDate end, HttpServletResponse response) {
+        // 1,查询每天的营业数据,汇总数据由每天的数据累加
+        List<DailyStatsDTO> dailyStats = getDailyStats(begin, end);
+        BusinessDataVO businessDataVO = toBusinessData(dailyStats);
         // 2.通过POI将数据写入到EXCEL中
-        // 获取输入流对象
-        InputStream in = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
+        SXSSFWorkbook excel = null;
         try {
             // 基于模板文件创建一个新的Excel
-            XSSFWorkbook excel = new XSSFWorkbook(in);
+            XSSFWorkbook template = new XSSFWorkbook(new ByteArrayInputStream(getTemplate()));
             // 获取表格sheet页
-            XSSFSheet sheet = excel.getSheet("Sheet1");
+            XSSFSheet sheet = template.getSheet("Sheet1");
             // 第二行第二列 填充字符
-            sheet.getRow(1).getCell(1).setCellValue("时间" + dateBegin + "至" + dateEnd);
+            sheet.getRow(1).getCell(1).setCellValue("时间" + begin + "至" + end);
             // 获取第四行数据
             XSSFRow row = sheet.getRow(3);
             // 营业额数据填充第四行第三列
@@ -251,40 +227,103 @@ public class ReportServiceImpl implements ReportService {
             // 评价客单价
             row.getCell(4).setCellValue(businessDataVO.getUnitPrice());
 
+            // 明细行沿用模板第8行的样式,删除模板中的空明细行后由SXSSF从第8行开始写入
+            CellStyle[] detailStyles = new CellStyle[DETAIL_COLUMNS + 1];
+            XSSFRow styleRow = sheet.getRow(DETAIL_FIRST_ROW);
+            for (int col = 1; col <= DETAIL_COLUMNS; col++) {
+                detailStyles[col] = styleRow.getCell(col).getCellStyle();
+            }
+            for (int i = sheet.getLastRowNum(); i >= DETAIL_FIRST_ROW; i--) {
+                XSSFRow templateRow = sheet.getRow(i);
+                if (templateRow != null) {
+                    sheet.removeRow(templateRow);
+                }
+            }
+
+            // 内存中最多保留100行,其余行写入临时文件
+            excel = new SXSSFWorkbook(template, 100);
+            SXSSFSheet detailSheet = excel.getSheet("Sheet1");
             // 明细数据
-            for (int i = 0; i < 30; i++) {
-                LocalDate date = dateBegin.plusDays(i);
-                BusinessDataVO businessData = workspaceService
-                        .getBusinessData(
-                                LocalDateTime.of(dateBegin, LocalTime.MIN),
-                                LocalDateTime.of(dateEnd, LocalTime.MAX));
+            for (int i = 0; i < dailyStats.size(); i++) {
+                DailyStatsDTO day = dailyStats.get(i);
+                BusinessDataVO businessData = toBusinessData(Collections.singletonList(day));
                 //活动7+i行
-                row = sheet.getRow(7 + i);
+                SXSSFRow detailRow = detailSheet.createRow(DETAIL_FIRST_ROW + i);
                 //日期
-                row.getCell(1).setCellValue(date.toString());
+                createCell(detailRow, 1, detailStyles).setCellValue(day.getDate().toString());
                 //营业额
-                row.getCell(2).setCellValue(businessData.getTurnover());
+                createCell(detailRow, 2, detailStyles).setCellValue(businessData.getTurnover());
                 //有效订单
-                row.getCell(3).setCellValue(businessData.getValidOrderCount());
+                createCell(detailRow, 3, detailStyles).setCellValue(businessData.getValidOrderCount());
                 //订单完成率
-                row.getCell(4).setCellValue(businessData.getOrderCompletionRate());
+                createCell(detailRow, 4, detailStyles).setCellValue(businessData.getOrderCompletionRate());
                 //平均客单价
-                row.getCell(5).setCellValue(businessData.getUnitPrice());
+                createCell(detailRow, 5, detailStyles).setCellValue(businessData.getUnitPrice());
                 //新增用户数
-                row.getCell(6).setCellValue(businessData.getNewUsers());
+                createCell(detailRow, 6, detailStyles).setCellValue(businessData.getNewUsers());
             }
 
             // 3.通过输出流将Excel文件下载到客户端浏览器
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setHeader("Content-Disposition", "attachment; filename=business_" + begin + "_" + end + ".xlsx");
             ServletOutputStream outputStream = response.getOutputStream();
             excel.write(outputStream);
-
-            // 关闭资源
-            outputStream.close();
-            excel.close();
+            outputStream.flush();
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            // 关闭资源,删除临时文件
+            if (excel != null) {
+                excel.dispose();
+            }
         }
+    }
 
+    private SXSSFCell createCell(SXSSFRow row, int col, CellStyle[] styles) {
+        SXSSFCell cell = row.createCell(col);
+        cell.setCellStyle(styles[col]);
+        return cell;
+    }
 
+    /**
+     * 根据每天的营业数据计算营业额、有效订单、订单完成率、平均客单价、新增用户
+     *
+     * @param dailyStats
+     * @return
+     */
+    private BusinessDataVO toBusinessData(List<DailyStatsDTO> dailyStats) {
+        int totalOrderCount = dailyStats.stream().mapToInt(DailyStatsDTO::getOrderCount).sum();
+        int validOrderCount = dailyStats.stream().mapToInt(DailyStatsDTO::getValidOrderCount).sum();
+        double turnover = dailyStats.stream().mapToDouble(DailyStatsDTO::getTurnover).sum();
+        double orderCompletionRate = 0.0;
+        double unitPrice = 0.0;
+        if (totalOrderCount != 0 && validOrderCount != 0) {
+            orderCompletionRate = (double) validOrderCount / totalOrderCount;
+            unitPrice = turnover / validOrderCount;
+        }
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(dailyStats.stream().mapToInt(DailyStatsDTO::getNewUsers).sum())
+                .build();
+    }
+
+    /**
+     * 读取报表模板,模板内容只加载一次
+     *
+     * @return
+     * @throws IOException
+     */
+    private byte[] getTemplate() throws IOException {
+        byte[] bytes = templateBytes;
+        if (bytes == null) {
+            try (InputStream in = this.getClass().getClassLoader().getResourceAsStream(TEMPLATE)) {
+                bytes = StreamUtils.copyToByteArray(in);
+            }
+            templateBytes = bytes;
+        }
+        return bytes;
     }
 }
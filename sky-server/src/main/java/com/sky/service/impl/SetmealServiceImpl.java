@@ -2,6 +2,8 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cache.CatalogCache;
+import com.sky.cache.CatalogItem;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.dto.SetmealDTO;
@@ -24,7 +26,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * 套餐业务实现
@@ -39,6 +44,8 @@ public class SetmealServiceImpl implements SetmealService {
     private SetmealDishMapper setmealDishMapper;
     @Autowired
     private DishMapper dishMapper;
+    @Autowired
+    private CatalogCache catalogCache;
 
     /**
      * 条件查询
@@ -58,7 +65,20 @@ public class SetmealServiceImpl implements SetmealService {
      * @return
      */
     public List<DishItemVO> getDishItemById(Long id) {
-        return setmealMapper.getDishItemBySetmealId(id);
+        CatalogItem setmeal = catalogCache.getSetmeal(id);
+        if (setmeal == null) {
+            return new ArrayList<>();
+        }
+        // 套餐中的菜品图片、描述取自菜品缓存
+        return setmeal.getItems().stream().map(si -> {
+            CatalogItem dish = catalogCache.getDish(si.getDishId());
+            return DishItemVO.builder()
+                    .name(si.getName())
+                    .copies(si.getCopies())
+                    .image(dish == null ? null : dish.getImage())
+                    .description(dish == null ? null : dish.getDescription())
+                    .build();
+        }).collect(Collectors.toList());
     }
 
     @Override
@@ -112,6 +132,7 @@ public class SetmealServiceImpl implements SetmealService {
             //删除套餐菜品关系表中的数据
             setmealDishMapper.deleteBySetmealId(setmealId);
         });
+        catalogCache.evictSetmeals(ids);
     }
 
     /**
@@ -156,6 +177,7 @@ public class SetmealServiceImpl implements SetmealService {
         });
         //3、重新插入套餐和菜品的关联关系，操作setmeal_dish表，执行insert
         setmealDishMapper.insertBatch(setmealDishes);
+        catalogCache.evictSetmeals(Collections.singletonList(setmealId));
     }
     /**
      * 套餐起售、停售
@@ -181,5 +203,6 @@ public class SetmealServiceImpl implements SetmealService {
                 .status(status)
                 .build();
         setmealMapper.update(setmeal);
+        catalogCache.evictSetmeals(Collections.singletonList(id));
     }
 }
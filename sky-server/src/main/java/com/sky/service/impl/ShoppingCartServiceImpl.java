@@ -1,13 +1,11 @@
 package com.sky.service.impl;
 
+import com.sky.cache.CatalogCache;
+import com.sky.cache.CatalogItem;
+import com.sky.cart.ShoppingCartStore;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
-import com.sky.entity.Dish;
-import com.sky.entity.Setmeal;
 import com.sky.entity.ShoppingCart;
-import com.sky.mapper.DishMapper;
-import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.ShoppingCartMapper;
 import com.sky.service.ShoppingCartService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
@@ -22,11 +20,9 @@ import java.util.List;
 public class ShoppingCartServiceImpl implements ShoppingCartService {
 
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartStore shoppingCartStore;
     @Autowired
-    private DishMapper dishMapper;
-    @Autowired
-    private SetmealMapper setmealMapper;
+    private CatalogCache catalogCache;
 
     /**
      * 添加购物车
@@ -35,41 +31,27 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public void addShopingCart(ShoppingCartDTO shoppingCartDTO) {
-        // 判断当前加入到购物车的商品是否已经存在
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         Long userId = BaseContext.getCurrentId();
         shoppingCart.setUserId(userId);
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
         // 如果已经存在了,只需要数量+1
-        if (list != null && list.size() > 0) {
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber() + 1);
-            shoppingCartMapper.updateNumberById(cart);
-        } else {
-            // 如果不存在了,需要插入一条购物车数据
-
-            // 判断本次添加到购物车的是菜品还是套餐
-            Long dishId = shoppingCartDTO.getDishId();
-            if (dishId != null) {
-                // 本次添加的是菜品
-                Dish dish = dishMapper.getById(dishId);
-                shoppingCart.setName(dish.getName());
-                shoppingCart.setImage(dish.getImage());
-                shoppingCart.setAmount(dish.getPrice());
-            } else {
-                // 本次添加的是套餐
-                Long setmealId = shoppingCartDTO.getSetmealId();
-
-                Setmeal setmeal = setmealMapper.getById(setmealId);
-                shoppingCart.setName(setmeal.getName());
-                shoppingCart.setImage(setmeal.getImage());
-                shoppingCart.setAmount(setmeal.getPrice());
-            }
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.inset(shoppingCart);
+        if (shoppingCartStore.increment(shoppingCart)) {
+            return;
         }
+        // 如果不存在了,需要插入一条购物车数据
+
+        // 判断本次添加到购物车的是菜品还是套餐
+        Long dishId = shoppingCartDTO.getDishId();
+        CatalogItem item = dishId != null
+                ? catalogCache.getDish(dishId)  // 本次添加的是菜品
+                : catalogCache.getSetmeal(shoppingCartDTO.getSetmealId());  // 本次添加的是套餐
+        shoppingCart.setName(item.getName());
+        shoppingCart.setImage(item.getImage());
+        shoppingCart.setAmount(item.getPrice());
+        shoppingCart.setNumber(1);
+        shoppingCart.setCreateTime(LocalDateTime.now());
+        shoppingCartStore.add(shoppingCart);
     }
 
     /**
@@ -80,11 +62,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     public List<ShoppingCart> showShoppingCart() {
         //获取到当前用户的ID
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        return list;
+        return shoppingCartStore.list(userId);
     }
 
     /**
@@ -94,7 +72,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     public void cleanShoppingCart() {
         //获取到当前用户的ID
         Long userId = BaseContext.getCurrentId();
-        shoppingCartMapper.deleteByUserId(userId);
+        shoppingCartStore.clean(userId);
     }
 
     /**
@@ -102,22 +80,11 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public void subShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        // 判断当前购物车的商品是否已经存在
         ShoppingCart shoppingCart = new ShoppingCart();
-
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         Long userId = BaseContext.getCurrentId();
         shoppingCart.setUserId(userId);
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-
-        // 如果已经存在了,且数量大于1 则数量-1
-        if (list != null && list.size() > 0 ) {
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber() - 1);
-            shoppingCartMapper.updateNumberById(cart);
-            if (cart.getNumber() <= 0){
-                shoppingCartMapper.deleteById(cart.getId());
-            }
-        }
+        // 数量-1,减到0时删除该商品
+        shoppingCartStore.decrement(shoppingCart);
     }
 }
@@ -1,11 +1,11 @@
 package com.sky.service.impl;
 
-import com.sky.constant.StatusConstant;
-import com.sky.entity.Orders;
+import com.sky.cache.WorkbenchCache;
+import com.sky.dto.DailyStatsDTO;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.UserMapper;
+import com.sky.service.OrderDailyStatsService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
@@ -16,8 +16,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 @Service
 @Slf4j
@@ -26,19 +25,26 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
-    private UserMapper userMapper;
-    @Autowired
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private OrderDailyStatsService orderDailyStatsService;
+    @Autowired
+    private WorkbenchCache workbenchCache;
 
     /**
-     * 根据时间段统计营业数据
+     * 根据时间段统计营业数据,按整天统计
      * @param begin
      * @param end
      * @return
      */
     public BusinessDataVO getBusinessData(LocalDateTime begin, LocalDateTime end) {
+        return workbenchCache.get("businessData_" + begin.toLocalDate() + "_" + end.toLocalDate(),
+                () -> sumBusinessData(begin, end));
+    }
+
+    private BusinessDataVO sumBusinessData(LocalDateTime begin, LocalDateTime end) {
         /**
          * 营业额：当日已完成订单的总金额
          * 有效订单：当日已完成订单的数量
@@ -47,20 +53,17 @@ public class WorkspaceServiceImpl implements WorkspaceService {
          * 新增用户：当日新增用户的数量
          */
 
-        Map map = new HashMap();
-        map.put("begin",begin);
-        map.put("end",end);
+        // 按天汇总,已结束的日期读取汇总表,当天实时统计
+        List<DailyStatsDTO> dailyStats = orderDailyStatsService.list(begin.toLocalDate(), end.toLocalDate());
 
         //查询总订单数
-        Integer totalOrderCount = orderMapper.countByMap(map);
+        Integer totalOrderCount = dailyStats.stream().mapToInt(DailyStatsDTO::getOrderCount).sum();
 
-        map.put("status", Orders.COMPLETED);
         //营业额
-        Double turnover = orderMapper.sumByMap(map);
-        turnover = turnover == null? 0.0 : turnover;
+        Double turnover = dailyStats.stream().mapToDouble(DailyStatsDTO::getTurnover).sum();
 
         //有效订单数
-        Integer validOrderCount = orderMapper.countByMap(map);
+        Integer validOrderCount = dailyStats.stream().mapToInt(DailyStatsDTO::getValidOrderCount).sum();
 
         Double unitPrice = 0.0;
 
@@ -73,7 +76,7 @@ public class WorkspaceServiceImpl implements WorkspaceService {
         }
 
         //新增用户数
-        Integer newUsers = userMapper.countByMap(map);
+        Integer newUsers = dailyStats.stream().mapToInt(DailyStatsDTO::getNewUsers).sum();
 
         return BusinessDataVO.builder()
                 .turnover(turnover)
@@ -91,36 +94,11 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public OrderOverViewVO getOrderOverView() {
-        Map map = new HashMap();
-        map.put("begin", LocalDateTime.now().with(LocalTime.MIN));
-        map.put("status", Orders.TO_BE_CONFIRMED);
-
-        //待接单
-        Integer waitingOrders = orderMapper.countByMap(map);
-
-        //待派送
-        map.put("status", Orders.CONFIRMED);
-        Integer deliveredOrders = orderMapper.countByMap(map);
-
-        //已完成
-        map.put("status", Orders.COMPLETED);
-        Integer completedOrders = orderMapper.countByMap(map);
-
-        //已取消
-        map.put("status", Orders.CANCELLED);
-        Integer cancelledOrders = orderMapper.countByMap(map);
-
-        //全部订单
-        map.put("status", null);
-        Integer allOrders = orderMapper.countByMap(map);
-
-        return OrderOverViewVO.builder()
-                .waitingOrders(waitingOrders)
-                .deliveredOrders(deliveredOrders)
-                .completedOrders(completedOrders)
-                .cancelledOrders(cancelledOrders)
-                .allOrders(allOrders)
-                .build();
+        // 一次查询按状态统计今天的订单数量,各项都只统计今天下单的订单
+        // OrderStatusCounter统计的是所有日期的订单,不能用于今天的总览;超时取消和定时任务批量修改状态时
+        // 不知道每个订单的下单日期,按天计数会有偏差,因此仍查询数据库,结果由工作台缓存在各会话间共用
+        return workbenchCache.get("orderOverView",
+                () -> orderMapper.countOverView(LocalDateTime.now().with(LocalTime.MIN)));
     }
 
     /**
@@ -129,17 +107,7 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public DishOverViewVO getDishOverView() {
-        Map map = new HashMap();
-        map.put("status", StatusConstant.ENABLE);
-        Integer sold = dishMapper.countByMap(map);
-
-        map.put("status", StatusConstant.DISABLE);
-        Integer discontinued = dishMapper.countByMap(map);
-
-        return DishOverViewVO.builder()
-                .sold(sold)
-                .discontinued(discontinued)
-                .build();
+        return workbenchCache.get("dishOverView", () -> dishMapper.countOverView());
     }
 
     /**
@@ -148,16 +116,6 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public SetmealOverViewVO getSetmealOverView() {
-        Map map = new HashMap();
-        map.put("status", StatusConstant.ENABLE);
-        Integer sold = setmealMapper.countByMap(map);
-
-        map.put("status", StatusConstant.DISABLE);
-        Integer discontinued = setmealMapper.countByMap(map);
-
-        return SetmealOverViewVO.builder()
-                .sold(sold)
-                .discontinued(discontinued)
-                .build();
+        return workbenchCache.get("setmealOverView", () -> setmealMapper.countOverView());
     }
 }
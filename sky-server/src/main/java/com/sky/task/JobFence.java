@@ -0,0 +1,45 @@
+package com.sky.task;
+
+/**
+ * 集群任务的防护令牌:任务名称和本次执行持有的租约令牌
+ * 数据库job_fence表记录每个任务的最新令牌,修改数据的语句带上令牌条件,
+ * 租约已被其它节点接管的旧节点(如长时间GC后恢复)写入时不会修改任何数据
+ */
+public class JobFence {
+
+    // 当前线程正在执行的集群任务
+    private static final ThreadLocal<JobFence> CURRENT = new ThreadLocal<>();
+
+    private final String job;
+    private final long token;
+
+    public JobFence(String job, long token) {
+        this.job = job;
+        this.token = token;
+    }
+
+    /**
+     * 当前线程正在执行的集群任务的令牌,不在集群任务中时返回null
+     *
+     * @return
+     */
+    public static JobFence current() {
+        return CURRENT.get();
+    }
+
+    public static void set(JobFence fence) {
+        CURRENT.set(fence);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public String getJob() {
+        return job;
+    }
+
+    public long getToken() {
+        return token;
+    }
+}
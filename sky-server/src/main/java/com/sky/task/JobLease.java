@@ -0,0 +1,82 @@
+package com.sky.task;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * 基于redis的定时任务租约
+ * 租约的值为 节点id:令牌,令牌在每次换主时递增,旧节点续约或释放时会因令牌不匹配而失败
+ * 租约过期后旧节点可能仍在执行,新令牌同时写入数据库job_fence表,修改数据时校验,见JobFence
+ */
+@Component
+@Slf4j
+public class JobLease {
+
+    private static final String LEASE = "job_lease_";
+    private static final String TOKEN = "job_lease_token_";
+
+    /**
+     * 获取或续约租约,租约空闲或由本节点持有时成功,返回令牌;被其它节点持有时返回0
+     * KEYS: 租约, 令牌计数器  ARGV: 节点id, 有效期毫秒
+     */
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) " +
+            "local token " +
+            "if v then " +
+            "  local sep = string.find(v, ':', 1, true) " +
+            "  if string.sub(v, 1, sep - 1) ~= ARGV[1] then return 0 end " +
+            "  token = tonumber(string.sub(v, sep + 1)) " +
+            "else " +
+            "  token = redis.call('INCR', KEYS[2]) " +
+            "end " +
+            "redis.call('SET', KEYS[1], ARGV[1] .. ':' .. token, 'PX', ARGV[2]) " +
+            "return token", Long.class);
+
+    /**
+     * 释放租约,只有令牌一致时才删除
+     * KEYS: 租约  ARGV: 节点id:令牌
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    // 当前节点id,每次启动生成
+    private final String nodeId = UUID.randomUUID().toString().replace("-", "");
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 获取或续约任务租约
+     *
+     * @param job
+     * @param leaseSeconds
+     * @return 令牌,未获取到时返回0
+     */
+    public long acquire(String job, long leaseSeconds) {
+        Long token = stringRedisTemplate.execute(ACQUIRE_SCRIPT, Arrays.asList(LEASE + job, TOKEN + job),
+                nodeId, String.valueOf(leaseSeconds * 1000));
+        return token == null ? 0 : token;
+    }
+
+    /**
+     * 释放租约,让其它节点可以立即接管,一般在节点停止时调用
+     *
+     * @param job
+     * @param token
+     */
+    public void release(String job, long token) {
+        stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(LEASE + job), nodeId + ":" + token);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,41 @@
+package com.sky.task;
+
+import com.sky.annotation.ClusterJob;
+import com.sky.service.OrderDailyStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+@Slf4j
+public class OrderDailyStatsTask {
+
+    // 每晚重新统计的天数
+    private static final int REBUILD_DAYS = 7;
+
+    @Autowired
+    private OrderDailyStatsService orderDailyStatsService;
+
+    /**
+     * 重新统计订单状态发生变化的日期
+     */
+    @Scheduled(fixedDelay = 60000)
+    @ClusterJob
+    public void rebuildDirty() {
+        orderDailyStatsService.rebuildDirty();
+    }
+
+    /**
+     * 每晚重新统计最近几天的汇总数据,修正批量处理订单等未标记的变化
+     * 在凌晨一点处理派送中订单之后执行
+     */
+    @Scheduled(cron = "0 30 1 * * ?")
+    @ClusterJob(leaseSeconds = 3600)
+    public void rebuildRecent() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        orderDailyStatsService.rebuild(yesterday.minusDays(REBUILD_DAYS - 1), yesterday);
+    }
+}
@@ -1,13 +1,18 @@
 package com.sky.task;
 
+import com.sky.annotation.ClusterJob;
+import com.sky.cache.SalesRanking;
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderStatusCounter;
+import com.sky.order.OrderTimeoutQueue;
+import com.sky.service.OrderDailyStatsService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.sql.Time;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -15,38 +20,76 @@ import java.util.List;
 @Slf4j
 public class OrderTask {
 
+    // 每条update语句最多修改的订单数,避免长事务和大量行锁
+    private static final int CHUNK_SIZE = 500;
+
     @Autowired
     private OrderMapper orderMapper;
+    @Autowired
+    private OrderDailyStatsService orderDailyStatsService;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private SalesRanking salesRanking;
 
     /**
      * 处理超时订单的方法
+     * 超时订单由OrderTimeoutQueue按时取消,这里只处理遗漏的订单(如redis数据丢失)
      */
-    @Scheduled(cron = "0 * * * * ?") //每分钟触发一次
+    @Scheduled(cron = "0 0/10 * * * ?") //每10分钟触发一次
+    @ClusterJob
     public void processTimeoutOrder(){
         log.info("定时处理超时订单:{}", LocalDateTime.now());
-        LocalDateTime time = LocalDateTime.now().plusMinutes(-15);
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, time);
-        if (ordersList!=null && ordersList.size()>0){
-            for (Orders orders : ordersList) {
-                orders.setStatus(Orders.CANCELLED);
-                orders.setCancelReason(Orders.ORDERTIMEOUTCANCEELED);
-                orders.setCancelTime(LocalDateTime.now());
-                orderMapper.update(orders);
-            }
-        }
+        LocalDateTime time = LocalDateTime.now().plusMinutes(-OrderTimeoutQueue.PAY_TIMEOUT_MINUTES);
+        transition("超时订单", Orders.PENDING_PAYMENT, Orders.CANCELLED, time, Orders.ORDERTIMEOUTCANCEELED);
     }
 
     @Scheduled(cron = "0 0 1 * * ?")//每天凌晨一点
+    @ClusterJob(leaseSeconds = 3600)
     public void processDeliverOrder(){
         log.info("定时处理处于派送中的订单:{}",LocalDateTime.now());
         LocalDateTime time = LocalDateTime.now().plusHours(-1);
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeLT(Orders.DELIVERY_IN_PROGRESS, time);
-        if (ordersList!=null && ordersList.size()>0){
-            for (Orders orders : ordersList) {
-                orders.setStatus(Orders.COMPLETED);
-                orderMapper.update(orders);
+        transition("派送中订单", Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, time, null);
+    }
+
+    /**
+     * 分批修改订单状态,每批一条update语句,直到没有符合条件的订单
+     *
+     * @param name 任务名称,用于日志
+     * @param fromStatus
+     * @param toStatus
+     * @param time 下单时间早于该时间的订单
+     * @param cancelReason 取消原因
+     * @return 修改的订单总数
+     */
+    private int transition(String name, Integer fromStatus, Integer toStatus, LocalDateTime time, String cancelReason) {
+        long start = System.currentTimeMillis();
+        int total = 0;
+        int chunks = 0;
+        int count;
+        // 租约被其它节点接管后,本节点剩余的批次不会修改订单
+        JobFence fence = JobFence.current();
+        // 修改前查询涉及的日期,修改后无法再按原状态区分
+        List<LocalDate> dates = orderMapper.getOrderDatesByStatusAndOrderTimeLT(fromStatus, time);
+        do {
+            count = orderMapper.transitionByOrderTimeLT(fromStatus, toStatus, time, cancelReason, CHUNK_SIZE, fence);
+            orderStatusCounter.move(fromStatus, toStatus, count);
+            total += count;
+            chunks++;
+            if (count > 0) {
+                log.info("{}处理中:第{}批修改{}个,累计{}个", name, chunks, count, total);
+            }
+        } while (count == CHUNK_SIZE);
+        log.info("{}处理完成:共修改{}个,{}条语句,耗时{}ms", name, total, chunks, System.currentTimeMillis() - start);
+        if (total > 0 && !dates.isEmpty()) {
+            // 批量修改不经过状态机,涉及的日期重新统计汇总数据;查询日期后才进入该状态的订单由每晚的重新统计修正
+            dates.forEach(date -> orderDailyStatsService.markDirty(date.atStartOfDay()));
+            if (Orders.COMPLETED.equals(toStatus)) {
+                // 完成的订单没有累加销量,这些日期的销量排行下次查询时从数据库重新加载
+                salesRanking.evict(dates.get(0), dates.get(dates.size() - 1));
             }
         }
+        return total;
     }
 
 }
@@ -0,0 +1,111 @@
+package com.sky.task;
+
+import com.sky.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * 订单号生成器机器id的租约:每个机器id对应一个JobLease租约,持有租约的节点才能使用该机器id
+ * 节点定时续约,续约成功时延长生成器的有效期;租约被其它节点占用或续约失败直到过期时,生成器拒绝生成订单号
+ */
+@Component
+@Slf4j
+public class WorkerIdLease {
+
+    // 机器id租约的任务名称前缀
+    private static final String WORKER = "order_number_worker_";
+    // 分配机器id的起始序号,使各节点从不同的机器id开始尝试
+    private static final String WORKER_SEQ = "order_number_worker";
+    // 租约有效期,续约间隔为其三分之一
+    static final long LEASE_SECONDS = 30;
+
+    @Autowired
+    private JobLease jobLease;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private volatile long workerId = -1;
+    private volatile long token;
+    // 租约的本地有效期,从发起获取租约前开始计算,早于redis中租约的过期时间
+    private volatile long validUntil;
+    private volatile SnowflakeIdGenerator generator;
+
+    /**
+     * 分配一个空闲的机器id并持有其租约
+     *
+     * @return 机器id
+     */
+    public synchronized long acquire() {
+        long start = System.currentTimeMillis();
+        Long seq = stringRedisTemplate.opsForValue().increment(WORKER_SEQ);
+        long first = seq == null ? 0 : seq;
+        for (long i = 0; i <= SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+            long id = (first + i) % (SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+            long acquired = jobLease.acquire(WORKER + id, LEASE_SECONDS);
+            if (acquired > 0) {
+                workerId = id;
+                token = acquired;
+                validUntil = start + LEASE_SECONDS * 1000;
+                return id;
+            }
+        }
+        throw new IllegalStateException("没有空闲的机器id");
+    }
+
+    /**
+     * 由租约控制生成器的有效期
+     *
+     * @param generator 使用本租约机器id的生成器
+     */
+    public void bind(SnowflakeIdGenerator generator) {
+        generator.setValidUntil(validUntil);
+        this.generator = generator;
+    }
+
+    /**
+     * 续约
+     */
+    @Scheduled(fixedDelay = LEASE_SECONDS * 1000 / 3)
+    public void renew() {
+        SnowflakeIdGenerator generator = this.generator;
+        if (generator == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long acquired;
+        try {
+            acquired = jobLease.acquire(WORKER + workerId, LEASE_SECONDS);
+        } catch (RuntimeException e) {
+            // 保持原有效期,redis恢复前租约过期时生成器停止生成订单号
+            log.warn("机器id{}续约失败:{}", workerId, e.getMessage());
+            return;
+        }
+        if (acquired == 0) {
+            // 本节点的租约已过期并被其它节点占用,继续生成会产生重复的订单号
+            log.error("机器id{}已被其它节点占用,停止生成订单号", workerId);
+            generator.setValidUntil(0);
+            return;
+        }
+        if (acquired != token) {
+            log.warn("机器id{}的租约曾过期,已重新获得", workerId);
+            token = acquired;
+        }
+        validUntil = start + LEASE_SECONDS * 1000;
+        generator.setValidUntil(validUntil);
+    }
+
+    /**
+     * 节点停止时释放机器id
+     */
+    @PreDestroy
+    public void release() {
+        if (workerId >= 0) {
+            jobLease.release(WORKER + workerId, token);
+        }
+    }
+}
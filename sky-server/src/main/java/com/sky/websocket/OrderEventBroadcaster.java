@@ -0,0 +1,122 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单事件集群广播:来单提醒、催单等消息发布到redis频道,每个节点收到后推送给本节点的WebSocket客户端
+ * 发布消息的节点先直接推送给本节点客户端,再发布到频道,各节点按事件id去重,同一事件只推送一次
+ */
+@Component
+@Slf4j
+public class OrderEventBroadcaster implements MessageListener {
+
+    // 订单事件频道
+    public static final String CHANNEL = "order_event";
+    // 记录最近推送过的事件id数量,用于去重
+    private static final int RECENT_EVENTS = 4096;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    private final String nodeId = UUID.randomUUID().toString().replace("-", "");
+
+    // 最近推送过的事件id,按推送顺序淘汰
+    private final LinkedHashMap<String, Boolean> recentEvents = new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_EVENTS;
+        }
+    };
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong publishFailed = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicated = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    /**
+     * 向所有节点的客户端推送消息
+     *
+     * @param message
+     */
+    public void broadcast(String message) {
+        String eventId = UUID.randomUUID().toString().replace("-", "");
+        // 本节点直接推送,不依赖redis
+        deliver(eventId, message);
+
+        JSONObject event = new JSONObject();
+        event.put("id", eventId);
+        event.put("node", nodeId);
+        event.put("body", message);
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, event.toJSONString());
+            published.incrementAndGet();
+        } catch (RuntimeException e) {
+            // 其它节点收不到该消息,本节点已推送
+            publishFailed.incrementAndGet();
+            log.warn("发布订单事件失败:{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 收到订单事件,推送给本节点的客户端
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        received.incrementAndGet();
+        JSONObject event;
+        try {
+            event = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            log.warn("无法解析订单事件:{}", e.getMessage());
+            return;
+        }
+        deliver(event.getString("id"), event.getString("body"));
+    }
+
+    /**
+     * 本节点的事件广播统计和WebSocket发送统计
+     *
+     * @return
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("node", nodeId);
+        map.put("published", published.get());
+        map.put("publishFailed", publishFailed.get());
+        map.put("received", received.get());
+        map.put("duplicated", duplicated.get());
+        map.put("delivered", delivered.get());
+        map.put("websocket", webSocketServer.stats());
+        return map;
+    }
+
+    private void deliver(String eventId, String message) {
+        synchronized (recentEvents) {
+            if (recentEvents.put(eventId, Boolean.TRUE) != null) {
+                duplicated.incrementAndGet();
+                return;
+            }
+        }
+        delivered.incrementAndGet();
+        webSocketServer.sendToAllClient(message);
+    }
+}
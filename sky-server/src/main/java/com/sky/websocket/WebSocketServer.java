@@ -1,33 +1,77 @@
 package com.sky.websocket;
 
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+
+import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * WebSocket服务
+ * 每个客户端有一个有界的待发送队列,群发时只把消息放入队列,由发送线程异步发送,调用方不等待客户端
+ * 同一客户端同时只有一条消息在发送,发送完成后再发送下一条
+ * 待发送消息过多或发送超时的客户端按配置丢弃旧消息或关闭连接
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
 
-    //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    //存放会话对象,端点对象由容器为每个连接单独创建,所以是静态的
+    private static final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+    // 发起异步发送和关闭慢客户端的线程,只发起发送,不等待发送完成
+    private static final ExecutorService sendExecutor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "websocket-send-" + THREAD_INDEX.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile WebSocketProperties properties = new WebSocketProperties();
+
+    private static final AtomicLong sent = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong evicted = new AtomicLong();
+
+    @Autowired
+    public void setWebSocketProperties(WebSocketProperties webSocketProperties) {
+        WebSocketServer.properties = webSocketProperties;
+    }
 
     /**
      * 连接建立成功调用的方法
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        log.info("客户端：{}建立连接", sid);
+        session.getAsyncRemote().setSendTimeout(properties.getSendTimeoutMillis());
+        Client old = clients.put(sid, new Client(sid, session, properties.getQueueCapacity()));
+        if (old != null) {
+            // 同一客户端重复连接,关闭旧连接
+            sendExecutor.execute(() -> old.close(CloseReason.CloseCodes.NORMAL_CLOSURE, "replaced"));
+        }
     }
 
     /**
@@ -37,7 +81,7 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        log.info("收到来自客户端：{}的信息:{}", sid, message);
     }
 
     /**
@@ -46,26 +90,151 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开:{}", sid);
+        remove(sid, session);
+    }
+
+    @OnError
+    public void onError(Session session, @PathParam("sid") String sid, Throwable error) {
+        log.warn("连接异常:{},{}", sid, error.getMessage());
+        remove(sid, session);
     }
 
     /**
-     * 群发
+     * 群发,消息放入各客户端的待发送队列后立即返回
      *
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
-            try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
+        for (Client client : clients.values()) {
+            if (client.enqueue(message)) {
+                sendExecutor.execute(client::sendNext);
             }
         }
     }
 
+    /**
+     * 本节点的连接数和发送统计
+     *
+     * @return
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        map.put("sessions", (long) clients.size());
+        map.put("sent", sent.get());
+        map.put("dropped", dropped.get());
+        map.put("evicted", evicted.get());
+        return map;
+    }
+
+    private static void remove(String sid, Session session) {
+        Client client = clients.get(sid);
+        if (client != null && client.session == session) {
+            clients.remove(sid, client);
+        }
+    }
+
+    /**
+     * 关闭慢客户端,客户端重连后继续接收新消息
+     *
+     * @param client
+     * @param reason
+     */
+    private static void evict(Client client, String reason) {
+        if (!clients.remove(client.sid, client)) {
+            return;
+        }
+        evicted.incrementAndGet();
+        log.warn("关闭慢客户端:{},{}", client.sid, reason);
+        sendExecutor.execute(() -> client.close(CloseReason.CloseCodes.TRY_AGAIN_LATER, "slow consumer"));
+    }
+
+    /**
+     * 一个客户端连接及其待发送队列
+     */
+    private static class Client implements SendHandler {
+        private final String sid;
+        private final Session session;
+        private final BlockingQueue<String> queue;
+        // 是否有消息正在发送
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        Client(String sid, Session session, int capacity) {
+            this.sid = sid;
+            this.session = session;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * 消息放入待发送队列
+         *
+         * @param message
+         * @return 是否需要发起发送
+         */
+        boolean enqueue(String message) {
+            if (!queue.offer(message)) {
+                if (!WebSocketProperties.DROP_OLDEST.equals(properties.getSlowConsumerPolicy())) {
+                    evict(this, "待发送消息过多");
+                    return false;
+                }
+                // 丢弃最早的消息,为新消息腾出位置
+                while (!queue.offer(message)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+            }
+            return !sending.get();
+        }
+
+        /**
+         * 没有消息正在发送时,发送队列中的下一条消息
+         */
+        void sendNext() {
+            while (sending.compareAndSet(false, true)) {
+                String message = queue.poll();
+                if (message != null) {
+                    try {
+                        session.getAsyncRemote().sendText(message, this);
+                    } catch (RuntimeException e) {
+                        evict(this, "发送失败:" + e.getMessage());
+                    }
+                    return;
+                }
+                sending.set(false);
+                // 释放发送标记前可能有新消息入队,再检查一次
+                if (queue.isEmpty()) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 一条消息发送完成,在发送线程中继续发送下一条,避免在容器的回调线程中递归发送
+         *
+         * @param result
+         */
+        @Override
+        public void onResult(SendResult result) {
+            if (!result.isOK()) {
+                String reason = result.getException() == null ? "发送失败" : result.getException().getMessage();
+                evict(this, "发送失败:" + reason);
+                return;
+            }
+            sent.incrementAndGet();
+            sending.set(false);
+            if (!queue.isEmpty()) {
+                sendExecutor.execute(this::sendNext);
+            }
+        }
+
+        void close(CloseReason.CloseCodes code, String reason) {
+            try {
+                session.close(new CloseReason(code, reason));
+            } catch (IOException | RuntimeException e) {
+                log.warn("关闭连接失败:{},{}", sid, e.getMessage());
+            }
+        }
+    }
 }
@@ -0,0 +1,104 @@
+package com.sky.aspect;
+
+import com.sky.annotation.ClusterJob;
+import com.sky.mapper.JobFenceMapper;
+import com.sky.task.JobFence;
+import com.sky.task.JobLease;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ClusterJobAspectTest {
+
+    private static final String JOB = "OrderTask.processTimeoutOrder";
+
+    @Mock
+    private JobLease jobLease;
+    @Mock
+    private JobFenceMapper jobFenceMapper;
+    @Mock
+    private ProceedingJoinPoint joinPoint;
+    @Mock
+    private MethodSignature signature;
+    @Mock
+    private ClusterJob clusterJob;
+
+    @InjectMocks
+    private ClusterJobAspect clusterJobAspect;
+
+    // 任务执行时看到的令牌
+    private final List<JobFence> seen = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Throwable {
+        when(clusterJob.value()).thenReturn(JOB);
+        lenient().when(clusterJob.leaseSeconds()).thenReturn(60L);
+        lenient().when(joinPoint.proceed()).thenAnswer(invocation -> {
+            seen.add(JobFence.current());
+            return null;
+        });
+    }
+
+    @Test
+    void fenceIsRaisedOnceForEachNewToken() throws Throwable {
+        when(jobLease.acquire(JOB, 60)).thenReturn(3L, 3L, 5L);
+
+        clusterJobAspect.around(joinPoint, clusterJob);
+        clusterJobAspect.around(joinPoint, clusterJob);
+        clusterJobAspect.around(joinPoint, clusterJob);
+
+        verify(jobFenceMapper, times(1)).raise(JOB, 3L);
+        verify(jobFenceMapper, times(1)).raise(JOB, 5L);
+        assertEquals(3, seen.size());
+        assertEquals(JOB, seen.get(0).getJob());
+        assertEquals(3L, seen.get(1).getToken());
+        assertEquals(5L, seen.get(2).getToken());
+        // 执行结束后清除,不影响线程池中的其它任务
+        assertNull(JobFence.current());
+    }
+
+    @Test
+    void jobDoesNotRunUntilFenceIsRaised() throws Throwable {
+        when(jobLease.acquire(JOB, 60)).thenReturn(3L);
+        doThrow(new IllegalStateException("db down")).doNothing().when(jobFenceMapper).raise(JOB, 3L);
+
+        assertThrows(IllegalStateException.class, () -> clusterJobAspect.around(joinPoint, clusterJob));
+        verify(joinPoint, never()).proceed();
+
+        clusterJobAspect.around(joinPoint, clusterJob);
+        verify(jobFenceMapper, times(2)).raise(JOB, 3L);
+        assertEquals(1, seen.size());
+    }
+
+    @Test
+    void nodeWithoutLeaseSkips() throws Throwable {
+        when(jobLease.acquire(JOB, 60)).thenReturn(0L);
+
+        clusterJobAspect.around(joinPoint, clusterJob);
+
+        verify(joinPoint, never()).proceed();
+        verify(jobFenceMapper, never()).raise(anyString(), anyLong());
+        assertEquals(1L, clusterJobAspect.stats().get(JOB).get("skipped"));
+    }
+}
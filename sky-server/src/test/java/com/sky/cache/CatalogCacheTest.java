@@ -0,0 +1,73 @@
+package com.sky.cache;
+
+import com.sky.entity.Dish;
+import com.sky.mapper.DishMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CatalogCacheTest {
+
+    @Mock
+    private DishMapper dishMapper;
+    @Mock
+    private RedisTemplate redisTemplate;
+
+    @InjectMocks
+    private CatalogCache catalogCache;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void evictionInsideTransactionWaitsForCommit() {
+        when(dishMapper.getById(1L)).thenReturn(dish("10"), dish("12"));
+        assertEquals(new BigDecimal("10"), catalogCache.getDish(1L).getPrice());
+
+        TransactionSynchronizationManager.initSynchronization();
+        catalogCache.evictDishes(Collections.singletonList(1L));
+        // 提交前仍是旧值,不会重新查询
+        assertEquals(new BigDecimal("10"), catalogCache.getDish(1L).getPrice());
+        verify(dishMapper, times(1)).getById(1L);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(new BigDecimal("12"), catalogCache.getDish(1L).getPrice());
+        verify(redisTemplate).convertAndSend(CatalogCache.EVICT_CHANNEL, "d1");
+    }
+
+    @Test
+    void evictionDuringLoadDiscardsLoadedValue() {
+        when(dishMapper.getById(1L)).thenAnswer(invocation -> {
+            // 查询期间其它节点修改了该菜品
+            catalogCache.evictDishes(Collections.singletonList(1L));
+            return dish("10");
+        }).thenReturn(dish("12"));
+
+        assertEquals(new BigDecimal("10"), catalogCache.getDish(1L).getPrice());
+        assertEquals(new BigDecimal("12"), catalogCache.getDish(1L).getPrice());
+        verify(dishMapper, times(2)).getById(1L);
+    }
+
+    private Dish dish(String price) {
+        return Dish.builder().id(1L).name("dish").price(new BigDecimal(price)).status(1).build();
+    }
+}
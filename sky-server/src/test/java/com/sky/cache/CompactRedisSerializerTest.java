@@ -0,0 +1,123 @@
+package com.sky.cache;
+
+import com.sky.entity.DishFlavor;
+import com.sky.entity.Setmeal;
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Slf4j
+class CompactRedisSerializerTest {
+
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 5000;
+
+    private final ClassLoader classLoader = getClass().getClassLoader();
+    private final CompactRedisSerializer smile = new CompactRedisSerializer(CompactRedisSerializer.SMILE, classLoader);
+    private final JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer(classLoader);
+
+    @Test
+    void roundTripsCachedTypes() {
+        List<DishVO> dishes = dishes(20);
+        assertEquals(dishes, smile.deserialize(smile.serialize(dishes)));
+        List<Setmeal> setmeals = setmeals(10);
+        assertEquals(setmeals, smile.deserialize(smile.serialize(setmeals)));
+        assertEquals(1, smile.deserialize(smile.serialize(1)));
+    }
+
+    @Test
+    void readsValuesWrittenByJdkSerializer() {
+        List<DishVO> dishes = dishes(3);
+        assertEquals(dishes, smile.deserialize(jdk.serialize(dishes)));
+        // 回滚模式写jdk格式,仍能读取smile格式
+        CompactRedisSerializer rollback = new CompactRedisSerializer(CompactRedisSerializer.JDK, classLoader);
+        assertEquals(dishes, smile.deserialize(rollback.serialize(dishes)));
+        assertEquals(dishes, rollback.deserialize(smile.serialize(dishes)));
+    }
+
+    /**
+     * 对比smile和jdk序列化的数据大小和编解码耗时,耗时只输出不断言
+     */
+    @Test
+    void smileIsSmallerThanJdk() {
+        Object[][] samples = {
+                {"菜品列表(20)", dishes(20)},
+                {"套餐列表(10)", setmeals(10)},
+                {"营业状态", 1}
+        };
+        for (Object[] sample : samples) {
+            Object value = sample[1];
+            int smileBytes = smile.serialize(value).length;
+            int jdkBytes = jdk.serialize(value).length;
+            log.info("{}: smile {}字节 编码{}ns 解码{}ns | jdk {}字节 编码{}ns 解码{}ns", sample[0],
+                    smileBytes, encodeNanos(smile, value), decodeNanos(smile, value),
+                    jdkBytes, encodeNanos(jdk, value), decodeNanos(jdk, value));
+            assertTrue(smileBytes < jdkBytes);
+        }
+    }
+
+    private static long encodeNanos(RedisSerializer<Object> serializer, Object value) {
+        for (int i = 0; i < WARMUP; i++) {
+            serializer.serialize(value);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializer.serialize(value);
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private static long decodeNanos(RedisSerializer<Object> serializer, Object value) {
+        byte[] bytes = serializer.serialize(value);
+        for (int i = 0; i < WARMUP; i++) {
+            serializer.deserialize(bytes);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializer.deserialize(bytes);
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private static List<DishVO> dishes(int count) {
+        List<DishVO> list = new ArrayList<>();
+        for (long i = 1; i <= count; i++) {
+            DishVO dishVO = new DishVO();
+            dishVO.setId(i);
+            dishVO.setName("菜品" + i);
+            dishVO.setCategoryId(11L);
+            dishVO.setPrice(new BigDecimal("38.00"));
+            dishVO.setImage("https://sky-take-out.oss-cn-beijing.aliyuncs.com/" + i + ".png");
+            dishVO.setDescription("招牌菜");
+            dishVO.setStatus(1);
+            dishVO.setUpdateTime(LocalDateTime.of(2026, 10, 1, 12, 0));
+            dishVO.setFlavors(Arrays.asList(
+                    DishFlavor.builder().id(i * 2).dishId(i).name("辣度").value("[\"不辣\",\"微辣\",\"中辣\"]").build(),
+                    DishFlavor.builder().id(i * 2 + 1).dishId(i).name("忌口").value("[\"不要葱\",\"不要蒜\"]").build()));
+            list.add(dishVO);
+        }
+        return list;
+    }
+
+    private static List<Setmeal> setmeals(int count) {
+        List<Setmeal> list = new ArrayList<>();
+        for (long i = 1; i <= count; i++) {
+            list.add(Setmeal.builder().id(i).categoryId(13L).name("套餐" + i).price(new BigDecimal("58.00"))
+                    .status(1).description("双人套餐").image("https://sky-take-out.oss-cn-beijing.aliyuncs.com/s" + i + ".png")
+                    .createTime(LocalDateTime.of(2026, 10, 1, 12, 0)).updateTime(LocalDateTime.of(2026, 10, 1, 12, 0))
+                    .createUser(1L).updateUser(1L).build());
+        }
+        return list;
+    }
+}
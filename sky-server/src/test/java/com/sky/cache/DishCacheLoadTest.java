@@ -0,0 +1,130 @@
+package com.sky.cache;
+
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+
+/**
+ * 大量分类下的菜品缓存:清理一个分类的redis操作数与分类数量无关,且不影响其它分类的缓存
+ */
+@Slf4j
+@ExtendWith(MockitoExtension.class)
+class DishCacheLoadTest {
+
+    private static final int[] KEYSPACES = {1_000, 20_000};
+
+    @Mock
+    private RedisTemplate redisTemplate;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations valueOperations;
+    @Mock
+    private ValueOperations<String, String> stringValueOperations;
+
+    // 模拟的redis数据
+    private final Map<String, Object> store = new ConcurrentHashMap<>();
+    // redis往返次数
+    private final AtomicInteger roundTrips = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(stringRedisTemplate.opsForValue()).thenReturn(stringValueOperations);
+        lenient().doAnswer(inv -> {
+            roundTrips.incrementAndGet();
+            List<String> keys = inv.getArgument(3);
+            Object generation = store.getOrDefault(keys.get(0), "0");
+            return store.get(inv.<String>getArgument(4) + generation);
+        }).when(redisTemplate).execute(any(RedisScript.class), any(), any(), anyList(), any());
+        lenient().doAnswer(inv -> {
+            roundTrips.incrementAndGet();
+            store.put(inv.getArgument(0), inv.getArgument(1));
+            return null;
+        }).when(valueOperations).set(anyString(), any(), anyLong(), any());
+        lenient().doAnswer(inv -> {
+            roundTrips.incrementAndGet();
+            return (String) store.get(inv.<String>getArgument(0));
+        }).when(stringValueOperations).get(anyString());
+        lenient().doAnswer(inv -> {
+            roundTrips.incrementAndGet();
+            Object value = store.merge(inv.getArgument(0), "1",
+                    (old, one) -> String.valueOf(Long.parseLong((String) old) + 1));
+            return Long.valueOf((String) value);
+        }).when(stringValueOperations).increment(anyString());
+        lenient().doAnswer(inv -> {
+            roundTrips.incrementAndGet();
+            return 1L;
+        }).when(redisTemplate).convertAndSend(anyString(), any());
+    }
+
+    @Test
+    void evictingOneCategoryIsIndependentOfKeyspace() {
+        for (int categories : KEYSPACES) {
+            store.clear();
+            DishCache warm = newCache();
+            AtomicInteger loads = new AtomicInteger();
+            for (long category = 0; category < categories; category++) {
+                warm.get(category, () -> load(loads));
+            }
+            assertEquals(categories, loads.get());
+
+            roundTrips.set(0);
+            long start = System.nanoTime();
+            warm.evict(Arrays.asList(1L, 2L));
+            long evictNanos = System.nanoTime() - start;
+            // 每个分类一次INCR,加一次发布,不扫描也不删除其它key
+            assertEquals(3, roundTrips.get());
+
+            // 另一个节点一级缓存为空,只有被清理的两个分类需要查询数据库
+            DishCache cold = newCache();
+            loads.set(0);
+            roundTrips.set(0);
+            for (long category = 0; category < categories; category++) {
+                cold.get(category, () -> load(loads));
+            }
+            assertEquals(2, loads.get());
+            // 命中的分类一次往返,未命中的分类再读取代数、写入缓存各一次
+            assertEquals(categories + 2 * 2, roundTrips.get());
+
+            log.info("分类数:{},清理耗时:{}us,冷节点加载次数:{},redis往返:{}",
+                    categories, evictNanos / 1000, loads.get(), roundTrips.get());
+        }
+    }
+
+    private DishCache newCache() {
+        DishCache dishCache = new DishCache();
+        ReflectionTestUtils.setField(dishCache, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(dishCache, "stringRedisTemplate", stringRedisTemplate);
+        return dishCache;
+    }
+
+    private static List<DishVO> load(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return Collections.singletonList(new DishVO());
+    }
+}
@@ -0,0 +1,144 @@
+package com.sky.cache;
+
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class DishCacheTest {
+
+    private static final int THREADS = 16;
+
+    @Mock
+    private RedisTemplate redisTemplate;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations valueOperations;
+    @Mock
+    private ValueOperations<String, String> stringValueOperations;
+
+    @InjectMocks
+    private DishCache dishCache;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(stringRedisTemplate.opsForValue()).thenReturn(stringValueOperations);
+    }
+
+    @Test
+    void concurrentMissesLoadOncePerCategory() throws Exception {
+        AtomicInteger[] loads = {new AtomicInteger(), new AtomicInteger()};
+        List<DishVO>[] results = new List[]{dishes(3), dishes(5)};
+        CountDownLatch started = new CountDownLatch(THREADS * 2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS * 2);
+        List<Future<List<DishVO>>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS * 2; i++) {
+                int category = i % 2;
+                futures.add(pool.submit(() -> {
+                    started.countDown();
+                    return dishCache.get((long) category, () -> {
+                        loads[category].incrementAndGet();
+                        // 加载期间其余线程都到达,验证它们等待而不是各自查询数据库
+                        await(release);
+                        return results[category];
+                    });
+                }));
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            release.countDown();
+
+            for (int i = 0; i < futures.size(); i++) {
+                assertSame(results[i % 2], futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads[0].get());
+        assertEquals(1, loads[1].get());
+    }
+
+    @Test
+    void emptyCategoryIsCachedBriefly() {
+        AtomicInteger loads = new AtomicInteger();
+
+        dishCache.get(7L, () -> {
+            loads.incrementAndGet();
+            return Collections.emptyList();
+        });
+        dishCache.get(7L, () -> {
+            loads.incrementAndGet();
+            return Collections.emptyList();
+        });
+
+        assertEquals(1, loads.get());
+        // 空结果的过期时间为30秒加不超过20%的随机偏移
+        verify(valueOperations).set(anyString(), eq(Collections.emptyList()),
+                longThat(ttl -> ttl >= 30 && ttl <= 36), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    void emptyCategoryDoesNotOutliveRedisInLocalCache() {
+        long before = System.currentTimeMillis();
+        dishCache.get(7L, Collections::emptyList);
+        dishCache.get(8L, () -> dishes(1));
+
+        Map<Long, ?> l1 = (Map<Long, ?>) ReflectionTestUtils.getField(dishCache, "l1");
+        // 空集合在一级缓存中的存活时间不超过redis中的30秒,非空集合仍为60秒
+        long emptyExpireAt = (long) ReflectionTestUtils.getField(l1.get(7L), "expireAt");
+        long dishesExpireAt = (long) ReflectionTestUtils.getField(l1.get(8L), "expireAt");
+        assertTrue(emptyExpireAt - before <= TimeUnit.SECONDS.toMillis(30) + 1000);
+        assertTrue(dishesExpireAt - before >= TimeUnit.SECONDS.toMillis(60));
+    }
+
+    private static List<DishVO> dishes(int count) {
+        List<DishVO> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DishVO dishVO = new DishVO();
+            dishVO.setId((long) i);
+            list.add(dishVO);
+        }
+        return list;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
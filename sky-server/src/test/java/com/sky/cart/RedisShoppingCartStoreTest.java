@@ -0,0 +1,83 @@
+package com.sky.cart;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.ShoppingCartProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RedisShoppingCartStoreTest {
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private SetOperations<String, String> setOperations;
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+    @Mock
+    private ShoppingCartMapper shoppingCartMapper;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Spy
+    private ShoppingCartProperties shoppingCartProperties = new ShoppingCartProperties();
+
+    @InjectMocks
+    private RedisShoppingCartStore redisShoppingCartStore;
+
+    @BeforeEach
+    void setUp() {
+        shoppingCartProperties.setWriteBehind(true);
+        when(stringRedisTemplate.opsForSet()).thenReturn(setOperations);
+        when(stringRedisTemplate.opsForHash()).thenReturn(hashOperations);
+        doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(new SimpleTransactionStatus());
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        ShoppingCart item = ShoppingCart.builder().dishId(1L).name("宫保鸡丁").build();
+        when(setOperations.pop("shopping_cart_dirty", 100)).thenReturn(Arrays.asList("1", "2"));
+        when(hashOperations.entries(anyString())).thenAnswer(invocation ->
+                ((String) invocation.getArgument(0)).startsWith("shopping_cart_item_")
+                        ? Collections.singletonMap("d1:", JSON.toJSONString(item))
+                        : Collections.singletonMap("d1:", "2"));
+    }
+
+    @Test
+    void failedFlushIsRetriedAndDoesNotStopOtherUsers() {
+        // 用户1的插入失败,事务回滚,删除不会生效
+        doThrow(new IllegalStateException("deadlock")).doNothing().when(shoppingCartMapper).insertBatch(anyList());
+
+        redisShoppingCartStore.flushWriteBehind();
+
+        verify(transactionTemplate, times(2)).executeWithoutResult(any());
+        verify(setOperations).add("shopping_cart_dirty", "1");
+        verify(setOperations, never()).add("shopping_cart_dirty", "2");
+        verify(shoppingCartMapper).deleteByUserId(2L);
+    }
+}
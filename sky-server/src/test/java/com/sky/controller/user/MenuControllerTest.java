@@ -0,0 +1,83 @@
+package com.sky.controller.user;
+
+import com.sky.cache.MenuSnapshotCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MenuControllerTest {
+
+    private static final byte[] JSON = "{\"code\":1}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GZIP = {31, -117, 8, 0};
+
+    @Mock
+    private MenuSnapshotCache menuSnapshotCache;
+    @Mock
+    private MenuSnapshotCache.Snapshot snapshot;
+
+    @InjectMocks
+    private MenuController menuController;
+
+    @BeforeEach
+    void setUp() {
+        when(menuSnapshotCache.get()).thenReturn(snapshot);
+        lenient().when(snapshot.getJson()).thenReturn(JSON);
+        lenient().when(snapshot.getGzip()).thenReturn(GZIP);
+        lenient().when(snapshot.getEtag()).thenReturn("\"abc\"");
+        lenient().when(snapshot.getGzipEtag()).thenReturn("\"abc-gz\"");
+    }
+
+    @Test
+    void eachEncodingHasItsOwnEtag() throws Exception {
+        MockHttpServletResponse identity = menu(null, null);
+        assertEquals("\"abc\"", identity.getHeader(HttpHeaders.ETAG));
+        assertNull(identity.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(JSON, identity.getContentAsByteArray());
+
+        MockHttpServletResponse gzip = menu("gzip, deflate", null);
+        assertEquals("\"abc-gz\"", gzip.getHeader(HttpHeaders.ETAG));
+        assertEquals("gzip", gzip.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(GZIP, gzip.getContentAsByteArray());
+    }
+
+    @Test
+    void notModifiedOnlyForTheVariantServed() throws Exception {
+        assertEquals(304, menu("gzip", "\"abc-gz\"").getStatus());
+        assertEquals(304, menu(null, "\"abc\"").getStatus());
+        assertEquals(304, menu("gzip", "\"old\", W/\"abc-gz\"").getStatus());
+
+        // 缓存的是未压缩内容,本次需要返回压缩内容,反之亦然
+        MockHttpServletResponse gzip = menu("gzip", "\"abc\"");
+        assertEquals(200, gzip.getStatus());
+        assertArrayEquals(GZIP, gzip.getContentAsByteArray());
+        assertEquals(200, menu(null, "\"abc-gz\"").getStatus());
+    }
+
+    private MockHttpServletResponse menu(String acceptEncoding, String ifNoneMatch) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user/menu");
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        menuController.menu(request, response);
+        return response;
+    }
+}
@@ -0,0 +1,129 @@
+package com.sky.order;
+
+import com.sky.cache.SalesRanking;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderDetialMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.service.OrderDailyStatsService;
+import com.sky.utils.WeChatPayUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderStateMachineTest {
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderDetialMapper orderDetialMapper;
+    @Mock
+    private WeChatPayUtil weChatPayUtil;
+    @Mock
+    private SalesRanking salesRanking;
+    @Mock
+    private OrderStatusCounter orderStatusCounter;
+    @Mock
+    private OrderDailyStatsService orderDailyStatsService;
+    @Mock
+    private OrderTimeoutQueue orderTimeoutQueue;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    @InjectMocks
+    private OrderStateMachine orderStateMachine;
+
+    @BeforeEach
+    void setUp() {
+        orderStateMachine.init();
+        lenient().when(stringRedisTemplate.opsForSet()).thenReturn(setOperations);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void hooksRunOnlyAfterCommit() {
+        when(orderMapper.transition(any(), eq(Collections.singletonList(Orders.TO_BE_CONFIRMED)))).thenReturn(1);
+
+        orderStateMachine.fire(OrderTransition.CONFIRM, Orders.builder().id(1L).build(), null);
+        verifyNoInteractions(orderStatusCounter);
+        // 汇总数据的增量在状态修改的事务中执行
+        verify(orderDailyStatsService).applyTransition(1L, null, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(orderStatusCounter).move(Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, 1);
+    }
+
+    @Test
+    void rolledBackTransitionRunsNoHooks() {
+        when(orderMapper.transition(any(), anyList())).thenReturn(1);
+
+        orderStateMachine.fire(OrderTransition.COMPLETE, Orders.builder().id(1L).build(), null);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verifyNoInteractions(salesRanking, orderStatusCounter);
+    }
+
+    @Test
+    void staleStatusIsRejected() {
+        Orders ordersDB = Orders.builder().id(1L).status(Orders.COMPLETED).build();
+
+        assertThrows(OrderBusinessException.class,
+                () -> orderStateMachine.fire(OrderTransition.USER_CANCEL, Orders.builder().id(1L).build(), ordersDB));
+        verify(orderMapper, never()).transition(any(), anyList());
+    }
+
+    @Test
+    void lostRaceIsRejected() {
+        when(orderMapper.transition(any(), anyList())).thenReturn(0);
+
+        assertThrows(OrderBusinessException.class,
+                () -> orderStateMachine.fire(OrderTransition.DELIVER, Orders.builder().id(1L).build(), null));
+        verifyNoInteractions(orderStatusCounter);
+    }
+
+    @Test
+    void failedRefundIsQueuedForRetry() throws Exception {
+        Orders ordersDB = Orders.builder().id(1L).number("100").status(Orders.TO_BE_CONFIRMED)
+                .payStatus(Orders.PAID).build();
+        when(orderMapper.transition(any(), anyList())).thenReturn(1);
+        when(weChatPayUtil.refund(anyString(), anyString(), any(), any())).thenThrow(new RuntimeException("timeout"));
+
+        orderStateMachine.fire(OrderTransition.USER_CANCEL, Orders.builder().id(1L).build(), ordersDB);
+        verifyNoInteractions(weChatPayUtil);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(setOperations).add("order_refund_retry", "100");
+        // 退款失败不影响其它钩子
+        verify(orderStatusCounter).move(Orders.TO_BE_CONFIRMED, Orders.CANCELLED, 1);
+    }
+}
@@ -0,0 +1,70 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OrderStatusCounterTest {
+
+    private final StatusCountRedisStub redis = new StatusCountRedisStub();
+    private final OrderMapper orderMapper = mock(OrderMapper.class);
+    private final OrderStatusCounter counter = new OrderStatusCounter();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(counter, "stringRedisTemplate", redis.template());
+        ReflectionTestUtils.setField(counter, "orderMapper", orderMapper);
+    }
+
+    @Test
+    void staleRefreshDoesNotOverwriteLocalMoves() {
+        counter.move(null, Orders.PENDING_PAYMENT, 1);
+        // 刷新时读到的是下单前的数据,HGETALL返回后本节点又修改了计数
+        Map<Object, Object> stale = redis.snapshot();
+        counter.move(Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED, 1);
+        when(redis.template().opsForHash().entries("order_status_count")).thenReturn(stale);
+
+        counter.refresh();
+
+        assertEquals(0, counter.get(Orders.PENDING_PAYMENT));
+        assertEquals(1, counter.get(Orders.TO_BE_CONFIRMED));
+    }
+
+    @Test
+    void refreshPicksUpOtherNodesMoves() {
+        counter.move(null, Orders.PENDING_PAYMENT, 2);
+        // 其它节点接单
+        redis.move(Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED, 1);
+        assertEquals(0, counter.get(Orders.TO_BE_CONFIRMED));
+
+        counter.refresh();
+
+        assertEquals(1, counter.get(Orders.PENDING_PAYMENT));
+        assertEquals(1, counter.get(Orders.TO_BE_CONFIRMED));
+    }
+
+    @Test
+    void reconcileOverwritesWithDatabaseCounts() {
+        counter.move(null, Orders.PENDING_PAYMENT, 5);
+        Map<String, Object> row = new HashMap<>();
+        row.put("status", Orders.PENDING_PAYMENT);
+        row.put("number", 3L);
+        when(orderMapper.countGroupByStatus()).thenReturn(Arrays.asList(row));
+
+        counter.reconcile();
+        counter.refresh();
+
+        assertEquals(3, counter.get(Orders.PENDING_PAYMENT));
+        assertEquals("3", redis.snapshot().get(String.valueOf(Orders.PENDING_PAYMENT)));
+    }
+}
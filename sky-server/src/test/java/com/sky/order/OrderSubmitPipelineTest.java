@@ -0,0 +1,219 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderDetialMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderSubmitProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class OrderSubmitPipelineTest {
+
+    private static final int ORDERS = 8;
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderDetialMapper orderDetialMapper;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Spy
+    private OrderSubmitProperties orderSubmitProperties = new OrderSubmitProperties();
+
+    @InjectMocks
+    private OrderSubmitPipeline orderSubmitPipeline;
+
+    // 每次insertBatch写入的订单数
+    private final List<Integer> batches = new CopyOnWriteArrayList<>();
+    private final List<OrderDetail> insertedDetails = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextId = new AtomicLong(100);
+
+    @BeforeEach
+    void setUp() {
+        orderSubmitProperties.setPipeline(true);
+        orderSubmitProperties.setBatchSize(ORDERS);
+        // 等待时间足够长,所有并发提交的订单进入同一批
+        orderSubmitProperties.setMaxWaitMillis(500);
+
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(new SimpleTransactionStatus());
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        // 模拟useGeneratedKeys回填主键,订单号为bad的订单写入失败
+        lenient().doAnswer(invocation -> {
+            List<Orders> ordersList = invocation.getArgument(0);
+            if (ordersList.stream().anyMatch(o -> "bad".equals(o.getNumber()))) {
+                throw new IllegalStateException("Data too long for column 'address'");
+            }
+            batches.add(ordersList.size());
+            ordersList.forEach(o -> o.setId(nextId.incrementAndGet()));
+            return null;
+        }).when(orderMapper).insertBatch(anyList());
+        lenient().doAnswer(invocation -> {
+            insertedDetails.addAll(invocation.getArgument(0));
+            return null;
+        }).when(orderDetialMapper).insertBatch(anyList());
+
+        orderSubmitPipeline.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        orderSubmitPipeline.stop();
+    }
+
+    @Test
+    void concurrentSubmitsAreInsertedInOneBatchWithIdsBackFilled() throws Exception {
+        List<Orders> ordersList = new ArrayList<>();
+        List<List<OrderDetail>> detailLists = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            ordersList.add(Orders.builder().number("n" + i).build());
+            detailLists.add(details(2));
+        }
+
+        submitConcurrently(ordersList, detailLists).forEach(this::join);
+
+        assertEquals(Collections.singletonList(ORDERS), batches);
+        assertEquals(ORDERS * 2, insertedDetails.size());
+        for (int i = 0; i < ORDERS; i++) {
+            Long id = ordersList.get(i).getId();
+            assertNotNull(id);
+            for (OrderDetail detail : detailLists.get(i)) {
+                assertEquals(id, detail.getOrderId());
+            }
+        }
+    }
+
+    @Test
+    void failedBatchIsRetriedOrderByOrder() throws Exception {
+        List<Orders> ordersList = new ArrayList<>();
+        List<List<OrderDetail>> detailLists = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ordersList.add(Orders.builder().number(i == 2 ? "bad" : "n" + i).build());
+            detailLists.add(details(1));
+        }
+        orderSubmitProperties.setBatchSize(4);
+
+        List<Future<?>> futures = submitConcurrently(ordersList, detailLists);
+
+        for (int i = 0; i < futures.size(); i++) {
+            if (i == 2) {
+                Future<?> failed = futures.get(i);
+                Exception e = assertThrows(Exception.class, () -> failed.get(5, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            } else {
+                join(futures.get(i));
+                assertEquals(ordersList.get(i).getId(), detailLists.get(i).get(0).getOrderId());
+            }
+        }
+        // 整批失败后,其余订单各自写入
+        assertEquals(3, batches.size());
+        assertTrue(batches.stream().allMatch(size -> size == 1));
+    }
+
+    @Test
+    void ordersNotYetTakenAreAbandonedOnTimeout() throws Exception {
+        orderSubmitProperties.setBatchSize(1);
+        orderSubmitProperties.setSubmitTimeoutMillis(200);
+        CountDownLatch release = new CountDownLatch(1);
+        // 第一单写入时阻塞,第二单一直留在队列中
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            invocation.<Consumer<Object>>getArgument(0).accept(new SimpleTransactionStatus());
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> first = pool.submit(() -> orderSubmitPipeline.submit(Orders.builder().number("n0").build(), details(1)));
+            Thread.sleep(50);
+            OrderBusinessException e = assertThrows(OrderBusinessException.class,
+                    () -> orderSubmitPipeline.submit(Orders.builder().number("n1").build(), details(1)));
+            assertEquals(MessageConstant.ORDER_BUSY, e.getMessage());
+
+            release.countDown();
+            join(first);
+        } finally {
+            pool.shutdownNow();
+        }
+        orderSubmitPipeline.stop();
+        // 放弃的订单没有写入
+        assertEquals(Collections.singletonList(1), batches);
+    }
+
+    @Test
+    void submitAfterStopFailsImmediately() throws Exception {
+        orderSubmitPipeline.stop();
+
+        assertThrows(OrderBusinessException.class,
+                () -> orderSubmitPipeline.submit(Orders.builder().number("n0").build(), details(1)));
+    }
+
+    private List<Future<?>> submitConcurrently(List<Orders> ordersList, List<List<OrderDetail>> detailLists)
+            throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(ordersList.size());
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < ordersList.size(); i++) {
+            int index = i;
+            futures.add(pool.submit(() -> {
+                ready.await();
+                orderSubmitPipeline.submit(ordersList.get(index), detailLists.get(index));
+                return null;
+            }));
+        }
+        ready.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        return futures;
+    }
+
+    private void join(Future<?> future) {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<OrderDetail> details(int count) {
+        List<OrderDetail> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            list.add(OrderDetail.builder().name("dish" + i).build());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,158 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderDetialMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderSubmitProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+
+/**
+ * 1/8/64个用户并发下单时,逐单事务与批量提交的吞吐量对比
+ * 数据库用固定大小的连接池和每个事务固定的提交耗时模拟
+ */
+@Slf4j
+@ExtendWith(MockitoExtension.class)
+class OrderSubmitPipelineThroughputTest {
+
+    private static final int[] USERS = {1, 8, 64};
+    private static final int ORDERS_PER_USER = 20;
+    // 模拟的数据库连接数
+    private static final int CONNECTIONS = 8;
+    // 模拟的每个事务的提交耗时(毫秒)
+    private static final long COMMIT_MILLIS = 2;
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderDetialMapper orderDetialMapper;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Spy
+    private OrderSubmitProperties orderSubmitProperties = new OrderSubmitProperties();
+
+    @InjectMocks
+    private OrderSubmitPipeline orderSubmitPipeline;
+
+    private final Semaphore connections = new Semaphore(CONNECTIONS);
+    private final AtomicInteger transactions = new AtomicInteger();
+    private final AtomicLong nextId = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        orderSubmitProperties.setPipeline(true);
+
+        doAnswer(invocation -> {
+            connections.acquire();
+            try {
+                invocation.<Consumer<Object>>getArgument(0).accept(new SimpleTransactionStatus());
+                Thread.sleep(COMMIT_MILLIS);
+                transactions.incrementAndGet();
+            } finally {
+                connections.release();
+            }
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        lenient().doAnswer(invocation -> {
+            List<Orders> ordersList = invocation.getArgument(0);
+            ordersList.forEach(o -> o.setId(nextId.incrementAndGet()));
+            return null;
+        }).when(orderMapper).insertBatch(anyList());
+    }
+
+    @Test
+    void pipelineKeepsUpWithManyUsers() throws Exception {
+        double[] direct = new double[USERS.length];
+        double[] pipeline = new double[USERS.length];
+        for (int i = 0; i < USERS.length; i++) {
+            transactions.set(0);
+            direct[i] = run(USERS[i], this::submitDirectly);
+            assertEquals(USERS[i] * ORDERS_PER_USER, transactions.get());
+
+            orderSubmitPipeline.start();
+            try {
+                transactions.set(0);
+                pipeline[i] = run(USERS[i], orderSubmitPipeline::submit);
+            } finally {
+                orderSubmitPipeline.stop();
+            }
+            log.info("用户数:{},逐单事务:{}单/秒,批量提交:{}单/秒,批量提交事务数:{}",
+                    USERS[i], (long) direct[i], (long) pipeline[i], transactions.get());
+        }
+        // 连接数不足时,批量提交把多个订单合并到一个事务,吞吐量高于逐单事务;用户较少时凑批等待反而更慢
+        assertTrue(pipeline[2] > direct[2]);
+    }
+
+    /**
+     * 与OrderServiceImpl未开启批量提交时相同:每个订单一个事务
+     */
+    private void submitDirectly(Orders orders, List<OrderDetail> orderDetails) {
+        transactionTemplate.executeWithoutResult(status -> {
+            orders.setId(nextId.incrementAndGet());
+            orderDetails.forEach(d -> d.setOrderId(orders.getId()));
+        });
+    }
+
+    /**
+     * 每个用户依次下单,返回每秒完成的订单数
+     */
+    private double run(int users, Submitter submitter) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(users);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int u = 0; u < users; u++) {
+                futures.add(pool.submit(() -> {
+                    ready.await();
+                    for (int n = 0; n < ORDERS_PER_USER; n++) {
+                        submitter.submit(Orders.builder().number("n" + n).build(),
+                                Collections.singletonList(OrderDetail.builder().name("dish").build()));
+                    }
+                    return null;
+                }));
+            }
+            long start = System.nanoTime();
+            ready.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            long elapsed = System.nanoTime() - start;
+            return users * ORDERS_PER_USER * 1e9 / elapsed;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private interface Submitter {
+        void submit(Orders orders, List<OrderDetail> orderDetails);
+    }
+}
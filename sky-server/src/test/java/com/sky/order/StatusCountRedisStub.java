@@ -0,0 +1,75 @@
+package com.sky.order;
+
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 用内存中的hash模拟OrderStatusCounter使用的redis脚本和HGETALL
+ */
+public class StatusCountRedisStub {
+
+    private final Map<String, Long> hash = new HashMap<>();
+    private final StringRedisTemplate template = mock(StringRedisTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    public StatusCountRedisStub() {
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        lenient().when(template.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        lenient().when(hashOperations.entries(anyString())).thenAnswer(invocation -> snapshot());
+        lenient().doAnswer(invocation -> {
+            Object[] args = Arrays.copyOfRange(invocation.getArguments(), 2, invocation.getArguments().length);
+            return args.length == 3 ? move(args) : reset(args);
+        }).when(template).execute(any(RedisScript.class), anyList(), any());
+    }
+
+    public StringRedisTemplate template() {
+        return template;
+    }
+
+    /**
+     * 当前hash的副本,与HGETALL的返回值相同
+     */
+    public synchronized Map<Object, Object> snapshot() {
+        Map<Object, Object> copy = new HashMap<>();
+        hash.forEach((field, value) -> copy.put(field, String.valueOf(value)));
+        return copy;
+    }
+
+    /**
+     * 模拟其它节点修改计数
+     */
+    public synchronized void move(Integer fromStatus, Integer toStatus, long count) {
+        move(new Object[]{fromStatus == null ? "" : String.valueOf(fromStatus), String.valueOf(toStatus),
+                String.valueOf(count)});
+    }
+
+    private synchronized List<Long> move(Object[] args) {
+        long count = Long.parseLong((String) args[2]);
+        long from = 0;
+        if (!"".equals(args[0])) {
+            from = hash.merge((String) args[0], -count, Long::sum);
+        }
+        long to = hash.merge((String) args[1], count, Long::sum);
+        return Arrays.asList(hash.merge("version", 1L, Long::sum), from, to);
+    }
+
+    private synchronized Long reset(Object[] args) {
+        for (int i = 0; i < args.length; i++) {
+            hash.put(String.valueOf(i + 1), Long.parseLong((String) args[i]));
+        }
+        return hash.merge("version", 1L, Long::sum);
+    }
+}
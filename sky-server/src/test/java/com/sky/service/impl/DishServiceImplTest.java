@@ -0,0 +1,104 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Dish;
+import com.sky.entity.DishFlavor;
+import com.sky.mapper.DishFlavorMapper;
+import com.sky.mapper.DishMapper;
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@Slf4j
+class DishServiceImplTest {
+
+    // 模拟每次查询数据库的往返时间
+    private static final long ROUND_TRIP_MILLIS = 5;
+
+    @Mock
+    private DishMapper dishMapper;
+    @Mock
+    private DishFlavorMapper dishFlavorMapper;
+
+    @InjectMocks
+    private DishServiceImpl dishService;
+
+    /**
+     * 分类下菜品数量不同时,查询次数固定为2次(菜品 + 口味),耗时不随菜品数量增长
+     * 逐个菜品查询口味时需要 1 + N 次查询
+     */
+    @Test
+    void listWithFlavorQueriesTwiceRegardlessOfCategorySize() {
+        for (int size : new int[]{1, 10, 40, 100}) {
+            List<Dish> dishes = dishes(size);
+            when(dishMapper.list(any())).thenAnswer(invocation -> roundTrip(dishes));
+            when(dishFlavorMapper.getByDishIds(anyList())).thenAnswer(invocation -> {
+                List<DishFlavor> flavors = new ArrayList<>();
+                for (Long dishId : invocation.<List<Long>>getArgument(0)) {
+                    flavors.add(DishFlavor.builder().dishId(dishId).name("辣度").build());
+                    flavors.add(DishFlavor.builder().dishId(dishId).name("忌口").build());
+                }
+                return roundTrip(flavors);
+            });
+
+            long start = System.nanoTime();
+            List<DishVO> list = dishService.listWithFlavor(Dish.builder().categoryId(1L).build());
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            verify(dishMapper, times(1)).list(any());
+            verify(dishFlavorMapper, times(1)).getByDishIds(anyList());
+            verify(dishFlavorMapper, never()).getByDishId(anyLong());
+            assertEquals(size, list.size());
+            for (DishVO dishVO : list) {
+                assertEquals(2, dishVO.getFlavors().size());
+                assertTrue(dishVO.getFlavors().stream().allMatch(f -> f.getDishId().equals(dishVO.getId())));
+            }
+            log.info("菜品数:{},查询次数:2,耗时:{}ms,逐个查询口味需要{}次查询,约{}ms",
+                    size, elapsedMillis, size + 1, (size + 1) * ROUND_TRIP_MILLIS);
+            if (size >= 40) {
+                assertTrue(elapsedMillis < (size + 1) * ROUND_TRIP_MILLIS / 2);
+            }
+            clearInvocations(dishMapper, dishFlavorMapper);
+        }
+    }
+
+    @Test
+    void emptyCategorySkipsFlavorQuery() {
+        when(dishMapper.list(any())).thenReturn(new ArrayList<>());
+
+        assertTrue(dishService.listWithFlavor(Dish.builder().categoryId(1L).build()).isEmpty());
+        verify(dishFlavorMapper, never()).getByDishIds(anyList());
+    }
+
+    private static <T> T roundTrip(T result) throws InterruptedException {
+        Thread.sleep(ROUND_TRIP_MILLIS);
+        return result;
+    }
+
+    private static List<Dish> dishes(int count) {
+        List<Dish> list = new ArrayList<>();
+        for (long i = 1; i <= count; i++) {
+            list.add(Dish.builder().id(i).name("dish" + i).categoryId(1L).build());
+        }
+        return list;
+    }
+}
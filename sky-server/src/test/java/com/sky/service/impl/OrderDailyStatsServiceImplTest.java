@@ -0,0 +1,151 @@
+package com.sky.service.impl;
+
+import com.sky.cache.ReportCache;
+import com.sky.cache.SalesRanking;
+import com.sky.dto.DailyStatsDTO;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderDailyStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderDailyStatsServiceImplTest {
+
+    private static final LocalDate DAY1 = LocalDate.of(2026, 1, 1);
+
+    @Mock
+    private OrderDailyStatsMapper orderDailyStatsMapper;
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private ReportCache reportCache;
+    @Mock
+    private SalesRanking salesRanking;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private OrderDailyStatsServiceImpl orderDailyStatsService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(new SimpleTransactionStatus()));
+    }
+
+    @Test
+    void onlyMissingDaysAreRebuilt() {
+        // 汇总表中有1、2、4日,缺少3、5、6日
+        when(orderDailyStatsMapper.list(DAY1, DAY1.plusDays(5)))
+                .thenReturn(Arrays.asList(stored(0), stored(1), stored(3)));
+        when(orderMapper.sumByDate(any(), any())).thenReturn(new ArrayList<>());
+        when(userMapper.countByDate(any(), any())).thenReturn(new ArrayList<>());
+
+        List<DailyStatsDTO> list = orderDailyStatsService.list(DAY1, DAY1.plusDays(5));
+
+        List<LocalDate> dates = list.stream().map(DailyStatsDTO::getDate).collect(Collectors.toList());
+        List<LocalDate> expected = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            expected.add(DAY1.plusDays(i));
+        }
+        assertEquals(expected, dates);
+        assertEquals(100, list.get(0).getOrderCount());
+        assertEquals(0, list.get(2).getOrderCount());
+        // 连续缺少的5、6日一起统计
+        verify(orderMapper).sumByDate(start(2), end(2));
+        verify(orderMapper).sumByDate(start(4), end(5));
+        verify(orderMapper, times(2)).sumByDate(any(), any());
+        verify(orderDailyStatsMapper, times(2)).upsertBatch(any());
+        // 统计前锁定已有的日期,与订单状态变化的增量修改互斥
+        verify(orderDailyStatsMapper).lockRange(DAY1.plusDays(2), DAY1.plusDays(2));
+        verify(orderDailyStatsMapper).lockRange(DAY1.plusDays(4), DAY1.plusDays(5));
+    }
+
+    @Test
+    void transitionAdjustsOnlyItsOwnDay() {
+        LocalDateTime orderTime = LocalDateTime.of(DAY1, LocalTime.NOON);
+        when(orderDailyStatsMapper.applyTransition(eq(1L), eq(Orders.DELIVERY_IN_PROGRESS), eq(Orders.COMPLETED), any()))
+                .thenReturn(1);
+
+        orderDailyStatsService.applyTransition(1L, orderTime, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED);
+
+        // 一条update修改该日期的汇总数据,不重新统计整天的订单
+        verify(orderDailyStatsMapper).applyTransition(1L, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED,
+                LocalDate.now().atStartOfDay());
+        verify(reportCache).evict(DAY1, DAY1);
+        verify(orderMapper, never()).sumByDate(any(), any());
+        verify(orderMapper, never()).getOrderDatesByIds(any());
+        verify(orderDailyStatsMapper, never()).upsertBatch(any());
+    }
+
+    @Test
+    void transitionOfTodaysOrderIsNotStored() {
+        orderDailyStatsService.applyTransition(1L, LocalDateTime.now(), Orders.TO_BE_CONFIRMED, Orders.CONFIRMED);
+
+        verifyNoInteractions(orderDailyStatsMapper, reportCache);
+    }
+
+    @Test
+    void transitionWithoutOrderTimeLooksUpTheDayOnlyWhenStored() {
+        when(orderDailyStatsMapper.applyTransition(eq(1L), any(), any(), any())).thenReturn(1);
+        when(orderMapper.getOrderDatesByIds(Collections.singletonList(1L))).thenReturn(Collections.singletonList(DAY1));
+
+        orderDailyStatsService.applyTransition(1L, null, Orders.TO_BE_CONFIRMED, Orders.CANCELLED);
+        verify(reportCache).evict(DAY1, DAY1);
+
+        // 当天的订单或汇总表中没有该日期时,不修改也不查询日期
+        orderDailyStatsService.applyTransition(2L, null, Orders.TO_BE_CONFIRMED, Orders.CANCELLED);
+        verify(orderMapper, never()).getOrderDatesByIds(Collections.singletonList(2L));
+    }
+
+    @Test
+    void completeRangeIsNotRebuilt() {
+        when(orderDailyStatsMapper.list(DAY1, DAY1.plusDays(1))).thenReturn(Arrays.asList(stored(0), stored(1)));
+
+        assertEquals(2, orderDailyStatsService.list(DAY1, DAY1.plusDays(1)).size());
+        verify(orderMapper, never()).sumByDate(any(), any());
+        verify(orderDailyStatsMapper, never()).upsertBatch(any());
+    }
+
+    private static DailyStatsDTO stored(int day) {
+        return DailyStatsDTO.builder().date(DAY1.plusDays(day)).orderCount(100).build();
+    }
+
+    private static LocalDateTime start(int day) {
+        return LocalDateTime.of(DAY1.plusDays(day), LocalTime.MIN);
+    }
+
+    private static LocalDateTime end(int day) {
+        return LocalDateTime.of(DAY1.plusDays(day), LocalTime.MAX);
+    }
+}
@@ -0,0 +1,70 @@
+package com.sky.service.impl;
+
+import com.sky.dto.OrderExportDTO;
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.mapper.OrderMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OrderExportServiceImplTest {
+
+    @Test
+    void csvLineQuotesSeparatorsQuotesAndLineBreaks() throws Exception {
+        StringWriter writer = new StringWriter();
+        OrderExportServiceImpl.writeCsvLine(writer, new String[]{"a,b", "say \"hi\"", "line1\nline2", "plain"});
+        assertEquals("\"a,b\",\"say \"\"hi\"\"\",\"line1\nline2\",plain\r\n", writer.toString());
+    }
+
+    @Test
+    void formulaPrefixesAreNeutralised() {
+        assertEquals("'=HYPERLINK(\"x\")", OrderExportServiceImpl.escapeFormula("=HYPERLINK(\"x\")"));
+        assertEquals("'+1", OrderExportServiceImpl.escapeFormula("+1"));
+        assertEquals("'-2+3", OrderExportServiceImpl.escapeFormula("-2+3"));
+        assertEquals("'@SUM(A1)", OrderExportServiceImpl.escapeFormula("@SUM(A1)"));
+        assertEquals("'\tx", OrderExportServiceImpl.escapeFormula("\tx"));
+        assertEquals("少辣", OrderExportServiceImpl.escapeFormula("少辣"));
+        assertEquals("", OrderExportServiceImpl.escapeFormula(""));
+    }
+
+    @Test
+    void csvExportWritesBomAndGuardsUserFields() throws Exception {
+        OrderExportDTO row = new OrderExportDTO();
+        row.setId(1L);
+        row.setNumber("100");
+        row.setAmount(new BigDecimal("-5.00"));
+        row.setConsignee("=cmd|' /C calc'!A0");
+        row.setAddress("北京,朝阳");
+        row.setRemark("@SUM(1+1)");
+
+        Cursor<OrderExportDTO> cursor = mock(Cursor.class);
+        when(cursor.iterator()).thenReturn(Arrays.asList(row).iterator());
+        OrderMapper orderMapper = mock(OrderMapper.class);
+        when(orderMapper.exportCursor(any())).thenReturn(cursor);
+        OrderExportServiceImpl service = new OrderExportServiceImpl();
+        ReflectionTestUtils.setField(service, "orderMapper", orderMapper);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        service.export(new OrdersPageQueryDTO(), OrderExportServiceImpl.CSV, response);
+
+        String csv = new String(response.getContentAsByteArray(), StandardCharsets.UTF_8);
+        assertEquals('﻿', csv.charAt(0));
+        String[] lines = csv.substring(1).split("\r\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("订单id,订单号"));
+        // 金额不是用户填写的文本,保持原样;用户填写的文本加单引号
+        assertEquals("1,100,,,,,,-5.00,'=cmd|' /C calc'!A0,,\"北京,朝阳\",'@SUM(1+1),,,,", lines[1]);
+    }
+}
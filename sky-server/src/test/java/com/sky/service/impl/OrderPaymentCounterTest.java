@@ -0,0 +1,111 @@
+package com.sky.service.impl;
+
+import com.alibaba.fastjson.JSONObject;
+import com.sky.context.BaseContext;
+import com.sky.dto.OrdersPaymentDTO;
+import com.sky.entity.Orders;
+import com.sky.entity.User;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.order.OrderStateMachine;
+import com.sky.order.OrderStatusCounter;
+import com.sky.order.StatusCountRedisStub;
+import com.sky.order.OrderTimeoutQueue;
+import com.sky.service.OrderDailyStatsService;
+import com.sky.utils.WeChatPayUtil;
+import com.sky.websocket.OrderEventBroadcaster;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 支付流程中订单状态计数的变化
+ */
+class OrderPaymentCounterTest {
+
+    private final OrderMapper orderMapper = mock(OrderMapper.class);
+    private final UserMapper userMapper = mock(UserMapper.class);
+    private final WeChatPayUtil weChatPayUtil = mock(WeChatPayUtil.class);
+    private final OrderTimeoutQueue orderTimeoutQueue = mock(OrderTimeoutQueue.class);
+    private final OrderDailyStatsService orderDailyStatsService = mock(OrderDailyStatsService.class);
+    private final OrderEventBroadcaster orderEventBroadcaster = mock(OrderEventBroadcaster.class);
+
+    private final OrderStatusCounter orderStatusCounter = new OrderStatusCounter();
+    private final OrderStateMachine orderStateMachine = new OrderStateMachine();
+    private final OrderServiceImpl orderService = new OrderServiceImpl();
+
+    private final Orders ordersDB = Orders.builder().id(1L).number("100").status(Orders.PENDING_PAYMENT)
+            .payStatus(Orders.UN_PAID).build();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(orderStatusCounter, "stringRedisTemplate", new StatusCountRedisStub().template());
+
+        ReflectionTestUtils.setField(orderStateMachine, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(orderStateMachine, "orderStatusCounter", orderStatusCounter);
+        ReflectionTestUtils.setField(orderStateMachine, "orderDailyStatsService", orderDailyStatsService);
+        ReflectionTestUtils.setField(orderStateMachine, "orderTimeoutQueue", orderTimeoutQueue);
+        orderStateMachine.init();
+
+        ReflectionTestUtils.setField(orderService, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(orderService, "userMapper", userMapper);
+        ReflectionTestUtils.setField(orderService, "weChatPayUtil", weChatPayUtil);
+        ReflectionTestUtils.setField(orderService, "orderStateMachine", orderStateMachine);
+        ReflectionTestUtils.setField(orderService, "orderStatusCounter", orderStatusCounter);
+        ReflectionTestUtils.setField(orderService, "orderEventBroadcaster", orderEventBroadcaster);
+
+        BaseContext.setCurrentId(7L);
+        when(userMapper.getById(7L)).thenReturn(User.builder().id(7L).openid("openid").build());
+        when(orderMapper.getByNumber("100")).thenReturn(ordersDB);
+        when(orderMapper.transition(any(), anyList())).thenReturn(1);
+        JSONObject prepay = new JSONObject();
+        prepay.put("package", "prepay_id=1");
+        when(weChatPayUtil.pay(anyString(), any(), anyString(), anyString())).thenReturn(prepay);
+
+        // 用户下单
+        orderStatusCounter.move(null, Orders.PENDING_PAYMENT, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void paymentMovesCountersImmediately() throws Exception {
+        OrdersPaymentDTO dto = new OrdersPaymentDTO();
+        dto.setOrderNumber("100");
+        orderService.payment(dto);
+
+        assertEquals(0, orderStatusCounter.get(Orders.PENDING_PAYMENT));
+        assertEquals(1, orderStatusCounter.get(Orders.TO_BE_CONFIRMED));
+        assertEquals(1, orderService.statistics().getToBeConfirmed());
+        verify(orderTimeoutQueue).remove(1L);
+        verify(orderDailyStatsService).applyTransition(1L, null, Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED);
+    }
+
+    @Test
+    void duplicatePayNotificationDoesNotCountTwice() throws Exception {
+        OrdersPaymentDTO dto = new OrdersPaymentDTO();
+        dto.setOrderNumber("100");
+        orderService.payment(dto);
+
+        // 支付回调到达时订单已是待接单
+        when(orderMapper.getByNumber("100")).thenReturn(Orders.builder().id(1L).number("100")
+                .status(Orders.TO_BE_CONFIRMED).payStatus(Orders.PAID).build());
+        orderService.paySuccess("100");
+
+        assertEquals(0, orderStatusCounter.get(Orders.PENDING_PAYMENT));
+        assertEquals(1, orderStatusCounter.get(Orders.TO_BE_CONFIRMED));
+        verify(orderEventBroadcaster).broadcast(anyString());
+    }
+}
@@ -0,0 +1,156 @@
+package com.sky.service.impl;
+
+import com.github.pagehelper.Page;
+import com.github.pagehelper.PageHelper;
+import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderDetialMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderStateMachine;
+import com.sky.order.OrderTransition;
+import com.sky.result.PageResult;
+import com.sky.vo.OrderVO;
+import com.sky.websocket.OrderEventBroadcaster;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@Slf4j
+class OrderServiceImplTest {
+
+    // 雪花算法生成的订单号,以字符串保存在orders.number
+    private static final String NUMBER = "1975012345678901234";
+    // 模拟每次查询数据库的往返时间
+    private static final long ROUND_TRIP_MILLIS = 5;
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderDetialMapper orderDetialMapper;
+    @Mock
+    private OrderStateMachine orderStateMachine;
+    @Mock
+    private OrderEventBroadcaster orderEventBroadcaster;
+
+    @InjectMocks
+    private OrderServiceImpl orderService;
+
+    @Test
+    void paySuccessLooksUpTheOrderByItsNumber() {
+        when(orderMapper.getByNumber(NUMBER)).thenReturn(order(Orders.PENDING_PAYMENT));
+
+        orderService.paySuccess(NUMBER);
+
+        // 按字符串订单号查询,走orders.number的唯一索引,不再按id查询
+        verify(orderMapper).getByNumber(NUMBER);
+        verify(orderMapper, never()).getById(anyLong());
+        verify(orderStateMachine).fire(eq(OrderTransition.PAY),
+                argThat(o -> o.getId() == 7L && Orders.PAID.equals(o.getPayStatus())), any());
+        verify(orderEventBroadcaster).broadcast(anyString());
+    }
+
+    @Test
+    void duplicatePaymentNoticeDoesNotPayAgain() {
+        when(orderMapper.getByNumber(NUMBER)).thenReturn(order(Orders.TO_BE_CONFIRMED));
+
+        orderService.paySuccess(NUMBER);
+
+        verify(orderStateMachine, never()).fire(any(), any(), any());
+    }
+
+    @AfterEach
+    void clearPage() {
+        PageHelper.clearPage();
+    }
+
+    /**
+     * 每页10~100个订单时,订单明细只查询一次,耗时不随每页订单数增长
+     * 逐个订单查询明细时需要 1 + N 次查询
+     */
+    @Test
+    void orderPagesLoadDetailsOnce() {
+        when(orderDetialMapper.getByOrderIds(anyList())).thenAnswer(invocation -> {
+            List<OrderDetail> details = new ArrayList<>();
+            for (Long orderId : invocation.<List<Long>>getArgument(0)) {
+                details.add(OrderDetail.builder().orderId(orderId).name("宫保鸡丁").number(1).build());
+                details.add(OrderDetail.builder().orderId(orderId).name("米饭").number(2).build());
+            }
+            return roundTrip(details);
+        });
+
+        for (int pageSize : new int[]{10, 20, 50, 100}) {
+            Page<Orders> page = page(pageSize);
+            when(orderMapper.pageQuery(any())).thenAnswer(invocation -> roundTrip(page));
+
+            long start = System.nanoTime();
+            PageResult userPage = orderService.pageQuery4User(1, pageSize, null);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            verify(orderDetialMapper, times(1)).getByOrderIds(anyList());
+            verify(orderDetialMapper, never()).getByOrderId(anyLong());
+            for (Object record : userPage.getRecords()) {
+                OrderVO orderVO = (OrderVO) record;
+                assertEquals(2, orderVO.getOrderDetailList().size());
+                assertTrue(orderVO.getOrderDetailList().stream().allMatch(d -> d.getOrderId().equals(orderVO.getId())));
+            }
+            clearInvocations(orderDetialMapper);
+
+            OrdersPageQueryDTO query = new OrdersPageQueryDTO();
+            query.setPage(1);
+            query.setPageSize(pageSize);
+            PageResult adminPage = orderService.conditionSearch(query);
+            verify(orderDetialMapper, times(1)).getByOrderIds(anyList());
+            verify(orderDetialMapper, never()).getByOrderId(anyLong());
+            assertEquals(pageSize, adminPage.getRecords().size());
+            assertEquals("宫保鸡丁*1;米饭*2;", ((OrderVO) adminPage.getRecords().get(0)).getOrderDishes());
+            clearInvocations(orderDetialMapper);
+
+            log.info("每页订单数:{},查询次数:2,耗时:{}ms,逐个查询明细需要{}次查询,约{}ms",
+                    pageSize, elapsedMillis, pageSize + 1, (pageSize + 1) * ROUND_TRIP_MILLIS);
+            if (pageSize >= 50) {
+                assertTrue(elapsedMillis < (pageSize + 1) * ROUND_TRIP_MILLIS / 2);
+            }
+        }
+    }
+
+    private static <T> T roundTrip(T result) throws InterruptedException {
+        Thread.sleep(ROUND_TRIP_MILLIS);
+        return result;
+    }
+
+    private static Page<Orders> page(int size) {
+        Page<Orders> page = new Page<>(1, size);
+        for (long i = 1; i <= size; i++) {
+            page.add(Orders.builder().id(i).number(String.valueOf(i)).status(Orders.TO_BE_CONFIRMED).build());
+        }
+        page.setTotal(size * 10L);
+        return page;
+    }
+
+    private static Orders order(Integer status) {
+        return Orders.builder().id(7L).number(NUMBER).status(status).build();
+    }
+}
@@ -0,0 +1,246 @@
+package com.sky.service.impl;
+
+import com.sky.cache.ReportCache;
+import com.sky.cache.SalesRanking;
+import com.sky.dto.DailyStatsDTO;
+import com.sky.mapper.OrderDailyStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.service.OrderDailyStatsService;
+import com.sky.vo.OrderReportVO;
+import com.sky.vo.TurnoverReportVO;
+import com.sky.vo.UserReportVO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.util.DefaultTempFileCreationStrategy;
+import org.apache.poi.util.TempFile;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.servlet.ServletOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Slf4j
+@ExtendWith(MockitoExtension.class)
+class ReportServiceImplTest {
+
+    private static final LocalDate BEGIN = LocalDate.of(2025, 1, 1);
+    // 模板中明细数据的起始行
+    private static final int DETAIL_FIRST_ROW = 7;
+
+    @Mock
+    private OrderDailyStatsService orderDailyStatsService;
+    @Mock
+    private ReportCache reportCache;
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private OrderDailyStatsMapper orderDailyStatsMapper;
+    @Mock
+    private SalesRanking salesRanking;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private ReportServiceImpl reportService;
+
+    @BeforeEach
+    void setUp() {
+        // 缓存全部未命中,直接调用统计
+        lenient().when(reportCache.getDays(eq(ReportCache.STATS), any(), any(), any())).thenAnswer(invocation ->
+                invocation.<BiFunction<LocalDate, LocalDate, List<DailyStatsDTO>>>getArgument(3)
+                        .apply(invocation.getArgument(1), invocation.getArgument(2)));
+        lenient().when(orderDailyStatsService.list(any(), any())).thenAnswer(invocation ->
+                days(invocation.getArgument(0), invocation.getArgument(1)));
+    }
+
+    @TempDir
+    File tempDir;
+
+    @BeforeEach
+    void useTempDir() {
+        // SXSSF把超出窗口的明细行写入该目录下的临时文件
+        TempFile.setTempFileCreationStrategy(new DefaultTempFileCreationStrategy(tempDir));
+    }
+
+    @AfterEach
+    void restoreTempDir() {
+        TempFile.setTempFileCreationStrategy(new DefaultTempFileCreationStrategy());
+    }
+
+    @Test
+    void exportOfAYearKeepsMemoryFlat() throws Exception {
+        ExportResult year = export(365);
+        ExportResult decade = export(3650);
+
+        // 内存中最多保留100行明细,其余已写入临时文件;写入临时文件时有缓冲,允许少量行尚未落盘
+        log.info("导出365天:内存中明细行{},堆内存{}KB;导出3650天:内存中明细行{},堆内存{}KB",
+                365 - year.flushedRows, year.heapBeforeWrite / 1024,
+                3650 - decade.flushedRows, decade.heapBeforeWrite / 1024);
+        assertTrue(365 - year.flushedRows <= 200, "rows in memory " + (365 - year.flushedRows));
+        assertTrue(3650 - decade.flushedRows <= 200, "rows in memory " + (3650 - decade.flushedRows));
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(decade.content))) {
+            XSSFSheet sheet = workbook.getSheet("Sheet1");
+            assertEquals(DETAIL_FIRST_ROW + 3650 - 1, sheet.getLastRowNum());
+            assertEquals(BEGIN.toString(), sheet.getRow(DETAIL_FIRST_ROW).getCell(1).getStringCellValue());
+            assertEquals(BEGIN.plusDays(3649).toString(), sheet.getRow(sheet.getLastRowNum()).getCell(1).getStringCellValue());
+            // 汇总行:每天有效订单2单
+            assertEquals(3650 * 2, (int) sheet.getRow(4).getCell(2).getNumericCellValue());
+        }
+    }
+
+    @Test
+    void eachReportIsOneGroupedQueryWithGapsFilled() {
+        // 使用真实的按天统计,汇总表为空,所有日期从orders和user表统计
+        OrderDailyStatsServiceImpl dailyStatsService = new OrderDailyStatsServiceImpl();
+        ReflectionTestUtils.setField(dailyStatsService, "orderDailyStatsMapper", orderDailyStatsMapper);
+        ReflectionTestUtils.setField(dailyStatsService, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(dailyStatsService, "userMapper", userMapper);
+        ReflectionTestUtils.setField(dailyStatsService, "reportCache", reportCache);
+        ReflectionTestUtils.setField(dailyStatsService, "salesRanking", salesRanking);
+        ReflectionTestUtils.setField(dailyStatsService, "transactionTemplate", transactionTemplate);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(new SimpleTransactionStatus()));
+        ReflectionTestUtils.setField(reportService, "orderDailyStatsService", dailyStatsService);
+        when(orderDailyStatsMapper.list(any(), any())).thenReturn(new ArrayList<>());
+        // 每3天中只有第一天有订单和新用户,其余日期没有数据
+        when(orderMapper.sumByDate(any(), any())).thenAnswer(invocation -> everyThirdDay(invocation.getArgument(0),
+                invocation.getArgument(1), date -> DailyStatsDTO.builder().date(date).turnover(100.0)
+                        .orderCount(3).validOrderCount(2).cancelledOrderCount(1).pendingPaymentCount(0)
+                        .toBeConfirmedCount(0).confirmedCount(0).deliveryInProgressCount(0).build()));
+        when(userMapper.countByDate(any(), any())).thenAnswer(invocation -> everyThirdDay(invocation.getArgument(0),
+                invocation.getArgument(1), date -> DailyStatsDTO.builder().date(date).newUsers(1).build()));
+        when(userMapper.countByMap(any())).thenReturn(10);
+
+        for (int days : new int[]{7, 30, 365}) {
+            LocalDate end = BEGIN.plusDays(days - 1);
+            int active = (days + 2) / 3;
+
+            clearInvocations(orderMapper, userMapper);
+            TurnoverReportVO turnover = reportService.getTurnoverStatistics(BEGIN, end);
+            verify(orderMapper, times(1)).sumByDate(any(), any());
+            List<String> turnoverList = Arrays.asList(turnover.getTurnoverList().split(","));
+            assertEquals(days, turnoverList.size());
+            assertEquals("100.0", turnoverList.get(0));
+            assertEquals("0.0", turnoverList.get(1));
+            assertEquals(BEGIN + "," + BEGIN.plusDays(1), turnover.getDateList().substring(0, 21));
+
+            clearInvocations(orderMapper, userMapper);
+            UserReportVO user = reportService.getUserStatistics(BEGIN, end);
+            verify(userMapper, times(1)).countByDate(any(), any());
+            // 区间之前的用户总数只查询一次
+            verify(userMapper, times(1)).countByMap(any());
+            String[] totals = user.getTotalUserList().split(",");
+            assertEquals(days, totals.length);
+            assertEquals("0", user.getNewUserList().split(",")[days > 1 ? 1 : 0]);
+            assertEquals(String.valueOf(10 + active), totals[days - 1]);
+
+            clearInvocations(orderMapper, userMapper);
+            OrderReportVO order = reportService.getOrderStatistics(BEGIN, end);
+            verify(orderMapper, times(1)).sumByDate(any(), any());
+            assertEquals(days, order.getOrderCountList().split(",").length);
+            assertEquals(active * 3, order.getTotalOrderCount());
+            assertEquals(active * 2, order.getValidOrderCount());
+        }
+    }
+
+    private static List<DailyStatsDTO> everyThirdDay(LocalDateTime begin, LocalDateTime end,
+                                                     Function<LocalDate, DailyStatsDTO> row) {
+        List<DailyStatsDTO> list = new ArrayList<>();
+        for (LocalDate date = begin.toLocalDate(); !date.isAfter(end.toLocalDate()); date = date.plusDays(3)) {
+            list.add(row.apply(date));
+        }
+        return list;
+    }
+
+    private ExportResult export(int days) {
+        ExportResult result = new ExportResult();
+        MockHttpServletResponse response = new MockHttpServletResponse() {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                // 所有明细行创建完成、写出之前,统计已写入临时文件的行数和堆内存
+                result.flushedRows = flushedRows();
+                result.heapBeforeWrite = usedHeap();
+                return super.getOutputStream();
+            }
+        };
+        reportService.exportBusinessData(BEGIN, BEGIN.plusDays(days - 1), response);
+        result.content = response.getContentAsByteArray();
+        return result;
+    }
+
+    private int flushedRows() {
+        int rows = 0;
+        File[] files = tempDir.listFiles((dir, name) -> name.startsWith("poi-sxssf-sheet"));
+        for (File file : files == null ? new File[0] : files) {
+            try {
+                String xml = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                rows += xml.split("<row ", -1).length - 1;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return rows;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static List<DailyStatsDTO> days(LocalDate begin, LocalDate end) {
+        List<DailyStatsDTO> list = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            list.add(DailyStatsDTO.builder().date(date).turnover(100.0).orderCount(3).validOrderCount(2)
+                    .cancelledOrderCount(1).pendingPaymentCount(0).toBeConfirmedCount(0).confirmedCount(0)
+                    .deliveryInProgressCount(0).newUsers(1).build());
+        }
+        return list;
+    }
+
+    private static class ExportResult {
+        private long heapBeforeWrite;
+        private int flushedRows;
+        private byte[] content;
+    }
+}
@@ -0,0 +1,136 @@
+package com.sky.service.impl;
+
+import com.sky.cache.ReportCache;
+import com.sky.cache.SalesRanking;
+import com.sky.cache.WorkbenchCache;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.OrderDailyStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.vo.BusinessDataVO;
+import com.sky.vo.DishOverViewVO;
+import com.sky.vo.OrderOverViewVO;
+import com.sky.vo.SetmealOverViewVO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WorkspaceServiceImplTest {
+
+    // 同时轮询工作台的管理端会话数
+    private static final int SESSIONS = 20;
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private DishMapper dishMapper;
+    @Mock
+    private SetmealMapper setmealMapper;
+    @Mock
+    private OrderDailyStatsMapper orderDailyStatsMapper;
+    @Mock
+    private ReportCache reportCache;
+    @Mock
+    private SalesRanking salesRanking;
+    @Spy
+    private WorkbenchCache workbenchCache = new WorkbenchCache();
+
+    @InjectMocks
+    private WorkspaceServiceImpl workspaceService;
+
+    @BeforeEach
+    void setUp() {
+        // 使用真实的按天统计,今天的数据从orders和user表实时统计
+        OrderDailyStatsServiceImpl dailyStatsService = new OrderDailyStatsServiceImpl();
+        ReflectionTestUtils.setField(dailyStatsService, "orderDailyStatsMapper", orderDailyStatsMapper);
+        ReflectionTestUtils.setField(dailyStatsService, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(dailyStatsService, "userMapper", userMapper);
+        ReflectionTestUtils.setField(dailyStatsService, "reportCache", reportCache);
+        ReflectionTestUtils.setField(dailyStatsService, "salesRanking", salesRanking);
+        ReflectionTestUtils.setField(workspaceService, "orderDailyStatsService", dailyStatsService);
+
+        when(orderMapper.sumByDate(any(), any())).thenReturn(new ArrayList<>());
+        when(userMapper.countByDate(any(), any())).thenReturn(new ArrayList<>());
+        when(orderMapper.countOverView(any())).thenReturn(new OrderOverViewVO());
+        when(dishMapper.countOverView()).thenReturn(new DishOverViewVO());
+        when(setmealMapper.countOverView()).thenReturn(new SetmealOverViewVO());
+    }
+
+    /**
+     * 一次工作台刷新共5次查询:今日营业数据(订单按天汇总 + 新增用户) + 订单、菜品、套餐总览各1次
+     * 多个会话同时刷新时共用同一次查询结果
+     */
+    @Test
+    void concurrentRefreshesShareOneSetOfQueries() throws Exception {
+        refreshConcurrently();
+        verifyOneRefresh();
+
+        // 缓存过期后再次刷新,仍然只查询一轮
+        ((Map<?, ?>) ReflectionTestUtils.getField(workbenchCache, "entries")).clear();
+        clearInvocations(orderMapper, userMapper, dishMapper, setmealMapper);
+        refreshConcurrently();
+        verifyOneRefresh();
+    }
+
+    private void verifyOneRefresh() {
+        verify(orderMapper, times(1)).sumByDate(any(), any());
+        verify(userMapper, times(1)).countByDate(any(), any());
+        verify(orderMapper, times(1)).countOverView(any());
+        verify(dishMapper, times(1)).countOverView();
+        verify(setmealMapper, times(1)).countOverView();
+    }
+
+    private void refreshConcurrently() throws Exception {
+        LocalDateTime begin = LocalDateTime.now().with(LocalTime.MIN);
+        LocalDateTime end = LocalDateTime.now().with(LocalTime.MAX);
+        ExecutorService pool = Executors.newFixedThreadPool(SESSIONS);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < SESSIONS; i++) {
+                futures.add(pool.submit(() -> {
+                    ready.await();
+                    BusinessDataVO businessData = workspaceService.getBusinessData(begin, end);
+                    assertEquals(0, businessData.getValidOrderCount());
+                    workspaceService.getOrderOverView();
+                    workspaceService.getDishOverView();
+                    workspaceService.getSetmealOverView();
+                    return null;
+                }));
+            }
+            ready.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
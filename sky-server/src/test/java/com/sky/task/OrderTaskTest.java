@@ -0,0 +1,84 @@
+package com.sky.task;
+
+import com.sky.cache.SalesRanking;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderStatusCounter;
+import com.sky.service.OrderDailyStatsService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderTaskTest {
+
+    private static final LocalDate DAY1 = LocalDate.of(2026, 1, 1);
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderDailyStatsService orderDailyStatsService;
+    @Mock
+    private OrderStatusCounter orderStatusCounter;
+    @Mock
+    private SalesRanking salesRanking;
+
+    @InjectMocks
+    private OrderTask orderTask;
+
+    @Test
+    void completedOrdersReloadSalesRankingOfTheirDays() {
+        when(orderMapper.getOrderDatesByStatusAndOrderTimeLT(eq(Orders.DELIVERY_IN_PROGRESS), any()))
+                .thenReturn(Arrays.asList(DAY1, DAY1.plusDays(3)));
+        when(orderMapper.transitionByOrderTimeLT(eq(Orders.DELIVERY_IN_PROGRESS), eq(Orders.COMPLETED), any(),
+                isNull(), anyInt(), any())).thenReturn(500, 20);
+
+        orderTask.processDeliverOrder();
+
+        // 批量完成的订单没有经过状态机的销量累加,这些日期的销量排行和汇总数据重新统计
+        verify(salesRanking).evict(DAY1, DAY1.plusDays(3));
+        verify(orderDailyStatsService).markDirty(DAY1.atStartOfDay());
+        verify(orderDailyStatsService).markDirty(DAY1.plusDays(3).atStartOfDay());
+        verify(orderStatusCounter).move(Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, 500);
+        verify(orderStatusCounter).move(Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, 20);
+    }
+
+    @Test
+    void cancelledOrdersLeaveSalesRankingAlone() {
+        when(orderMapper.getOrderDatesByStatusAndOrderTimeLT(eq(Orders.PENDING_PAYMENT), any()))
+                .thenReturn(Collections.singletonList(DAY1));
+        when(orderMapper.transitionByOrderTimeLT(eq(Orders.PENDING_PAYMENT), eq(Orders.CANCELLED), any(),
+                eq(Orders.ORDERTIMEOUTCANCEELED), anyInt(), any())).thenReturn(3);
+
+        orderTask.processTimeoutOrder();
+
+        verify(orderDailyStatsService).markDirty(DAY1.atStartOfDay());
+        verify(salesRanking, never()).evict(any(), any());
+    }
+
+    @Test
+    void nothingChangedMarksNothing() {
+        when(orderMapper.getOrderDatesByStatusAndOrderTimeLT(any(), any())).thenReturn(Collections.emptyList());
+
+        orderTask.processDeliverOrder();
+
+        verify(orderMapper, times(1)).transitionByOrderTimeLT(any(), any(), any(), any(), anyInt(), any());
+        verify(orderDailyStatsService, never()).markDirty(any());
+        verify(salesRanking, never()).evict(any(), any());
+    }
+}
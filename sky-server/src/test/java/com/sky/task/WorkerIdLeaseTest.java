@@ -0,0 +1,96 @@
+package com.sky.task;
+
+import com.sky.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WorkerIdLeaseTest {
+
+    @Mock
+    private JobLease jobLease;
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @InjectMocks
+    private WorkerIdLease workerIdLease;
+
+    @BeforeEach
+    void setUp() {
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @Test
+    void heldWorkerIdsAreSkipped() {
+        when(valueOperations.increment("order_number_worker")).thenReturn(1023L);
+        // 1023和0已被其它节点持有
+        when(jobLease.acquire(anyString(), anyLong())).thenReturn(0L, 0L, 7L);
+
+        assertEquals(1L, workerIdLease.acquire());
+        verify(jobLease).acquire("order_number_worker_1023", WorkerIdLease.LEASE_SECONDS);
+        verify(jobLease).acquire("order_number_worker_0", WorkerIdLease.LEASE_SECONDS);
+        verify(jobLease).acquire("order_number_worker_1", WorkerIdLease.LEASE_SECONDS);
+    }
+
+    @Test
+    void generatorStopsWhenWorkerIdIsTakenOver() {
+        SnowflakeIdGenerator generator = bound(5L);
+
+        when(jobLease.acquire("order_number_worker_5", WorkerIdLease.LEASE_SECONDS)).thenReturn(7L);
+        workerIdLease.renew();
+        generator.nextId();
+
+        when(jobLease.acquire("order_number_worker_5", WorkerIdLease.LEASE_SECONDS)).thenReturn(0L);
+        workerIdLease.renew();
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        // 其它节点释放后重新获得,恢复生成
+        when(jobLease.acquire("order_number_worker_5", WorkerIdLease.LEASE_SECONDS)).thenReturn(9L);
+        workerIdLease.renew();
+        generator.nextId();
+    }
+
+    @Test
+    void redisFailureKeepsCurrentLeaseUntilItExpires() {
+        SnowflakeIdGenerator generator = bound(5L);
+
+        when(jobLease.acquire("order_number_worker_5", WorkerIdLease.LEASE_SECONDS))
+                .thenThrow(new IllegalStateException("redis down"));
+        workerIdLease.renew();
+
+        // 租约有效期内仍可生成
+        generator.nextId();
+    }
+
+    @Test
+    void releaseOnShutdown() {
+        bound(5L);
+
+        workerIdLease.release();
+
+        verify(jobLease).release("order_number_worker_5", 7L);
+    }
+
+    private SnowflakeIdGenerator bound(long workerId) {
+        when(valueOperations.increment("order_number_worker")).thenReturn(workerId);
+        when(jobLease.acquire("order_number_worker_" + workerId, WorkerIdLease.LEASE_SECONDS)).thenReturn(7L);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1672502400000L, workerIdLease.acquire(), 10);
+        workerIdLease.bind(generator);
+        return generator;
+    }
+}
@@ -0,0 +1,83 @@
+package com.sky.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class OrderEventBroadcasterTest {
+
+    // 模拟redis频道,发布的消息投递给所有订阅者,包括发布者自己
+    private final List<OrderEventBroadcaster> subscribers = new ArrayList<>();
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+
+    private WebSocketServer serverA;
+    private WebSocketServer serverB;
+    private OrderEventBroadcaster nodeA;
+    private OrderEventBroadcaster nodeB;
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> {
+            byte[] body = invocation.<String>getArgument(1).getBytes(StandardCharsets.UTF_8);
+            byte[] channel = OrderEventBroadcaster.CHANNEL.getBytes(StandardCharsets.UTF_8);
+            subscribers.forEach(s -> s.onMessage(new DefaultMessage(channel, body), null));
+            return 1L;
+        }).when(stringRedisTemplate).convertAndSend(eq(OrderEventBroadcaster.CHANNEL), anyString());
+
+        serverA = mock(WebSocketServer.class);
+        serverB = mock(WebSocketServer.class);
+        nodeA = node(serverA);
+        nodeB = node(serverB);
+    }
+
+    @Test
+    void eventReachesEveryNodeExactlyOnce() {
+        nodeA.broadcast("{\"type\":1,\"orderId\":1}");
+        nodeB.broadcast("{\"type\":2,\"orderId\":2}");
+
+        verify(serverA, times(1)).sendToAllClient("{\"type\":1,\"orderId\":1}");
+        verify(serverB, times(1)).sendToAllClient("{\"type\":1,\"orderId\":1}");
+        verify(serverA, times(1)).sendToAllClient("{\"type\":2,\"orderId\":2}");
+        verify(serverB, times(1)).sendToAllClient("{\"type\":2,\"orderId\":2}");
+        // 发布者收到自己的消息时去重
+        assertEquals(1L, nodeA.stats().get("duplicated"));
+        assertEquals(1L, nodeB.stats().get("duplicated"));
+        assertEquals(2L, nodeA.stats().get("delivered"));
+    }
+
+    @Test
+    void publishFailureStillDeliversLocally() {
+        doThrow(new IllegalStateException("redis down"))
+                .when(stringRedisTemplate).convertAndSend(eq(OrderEventBroadcaster.CHANNEL), anyString());
+
+        nodeA.broadcast("{\"type\":1,\"orderId\":1}");
+
+        verify(serverA).sendToAllClient("{\"type\":1,\"orderId\":1}");
+        verify(serverB, never()).sendToAllClient(anyString());
+        assertEquals(1L, nodeA.stats().get("publishFailed"));
+    }
+
+    private OrderEventBroadcaster node(WebSocketServer webSocketServer) {
+        OrderEventBroadcaster broadcaster = new OrderEventBroadcaster();
+        ReflectionTestUtils.setField(broadcaster, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(broadcaster, "webSocketServer", webSocketServer);
+        subscribers.add(broadcaster);
+        return broadcaster;
+    }
+}
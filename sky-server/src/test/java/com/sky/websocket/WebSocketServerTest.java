@@ -0,0 +1,128 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebSocketServerTest {
+
+    private final WebSocketServer webSocketServer = new WebSocketServer();
+    private final List<String> sids = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        sids.forEach(sid -> webSocketServer.onClose(null, sid));
+        webSocketServer.setWebSocketProperties(new WebSocketProperties());
+    }
+
+    @Test
+    void stuckClientDoesNotDelayOthers() throws Exception {
+        setProperties(WebSocketProperties.EVICT, 4);
+        // 统计是静态累计的,按差值判断
+        long evicted = webSocketServer.stats().get("evicted");
+        List<String> received = new CopyOnWriteArrayList<>();
+        Session fast = open("fast", fastRemote(received));
+        RemoteEndpoint.Async stuckRemote = mock(RemoteEndpoint.Async.class);
+        Session stuck = open("stuck", stuckRemote);
+
+        // 卡住的客户端一直不返回发送结果,快客户端仍能及时收到每一条消息
+        sendAndWait(received);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("m" + i, received.get(i));
+        }
+        // 卡住的客户端只有第一条在发送,队列满后被关闭,快客户端不受影响
+        verify(stuckRemote, times(1)).sendText(anyString(), any(SendHandler.class));
+        verify(stuck, timeout(5000)).close(any(CloseReason.class));
+        verify(fast, never()).close(any(CloseReason.class));
+        assertEquals(1L, webSocketServer.stats().get("sessions"));
+        assertEquals(evicted + 1, webSocketServer.stats().get("evicted"));
+    }
+
+    @Test
+    void dropOldestKeepsSlowClientConnected() throws Exception {
+        setProperties(WebSocketProperties.DROP_OLDEST, 4);
+        long dropped = webSocketServer.stats().get("dropped");
+        List<String> received = new CopyOnWriteArrayList<>();
+        open("fast", fastRemote(received));
+        RemoteEndpoint.Async stuckRemote = mock(RemoteEndpoint.Async.class);
+        Session stuck = open("stuck", stuckRemote);
+
+        sendAndWait(received);
+
+        verify(stuck, never()).close(any(CloseReason.class));
+        assertEquals(2L, webSocketServer.stats().get("sessions"));
+        // 1条在发送,队列中保留最新的4条
+        assertEquals(dropped + 15, webSocketServer.stats().get("dropped"));
+    }
+
+    private void sendAndWait(List<String> received) throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            int count = i + 1;
+            long start = System.nanoTime();
+            webSocketServer.sendToAllClient("m" + i);
+            // 群发只入队,不等待任何客户端
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+            waitFor(() -> received.size() == count);
+        }
+    }
+
+    private void setProperties(String policy, int queueCapacity) {
+        WebSocketProperties properties = new WebSocketProperties();
+        properties.setSlowConsumerPolicy(policy);
+        properties.setQueueCapacity(queueCapacity);
+        webSocketServer.setWebSocketProperties(properties);
+    }
+
+    private Session open(String sid, RemoteEndpoint.Async remote) {
+        Session session = mock(Session.class);
+        when(session.getAsyncRemote()).thenReturn(remote);
+        webSocketServer.onOpen(session, sid);
+        sids.add(sid);
+        return session;
+    }
+
+    /**
+     * 立即发送完成的客户端
+     */
+    private static RemoteEndpoint.Async fastRemote(List<String> received) {
+        RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        doAnswer(invocation -> {
+            received.add(invocation.getArgument(0));
+            invocation.<SendHandler>getArgument(1).onResult(new SendResult());
+            return null;
+        }).when(remote).sendText(anyString(), any(SendHandler.class));
+        return remote;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -86,7 +86,8 @@ CREATE TABLE `dish_flavor`  (
   `dish_id` bigint(20) NOT NULL COMMENT '菜品',
   `name` varchar(32) CHARACTER SET utf8 COLLATE utf8_bin NULL DEFAULT NULL COMMENT '口味名称',
   `value` varchar(255) CHARACTER SET utf8 COLLATE utf8_bin NULL DEFAULT NULL COMMENT '口味数据list',
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `idx_dish_id`(`dish_id` ASC) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 140 CHARACTER SET = utf8 COLLATE = utf8_bin COMMENT = '菜品口味关系表' ROW_FORMAT = Dynamic;
 
 -- ----------------------------
@@ -110,6 +111,16 @@ CREATE TABLE `employee`  (
   UNIQUE INDEX `idx_username`(`username` ASC) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 14 CHARACTER SET = utf8 COLLATE = utf8_bin COMMENT = '员工信息' ROW_FORMAT = Dynamic;
 
+-- ----------------------------
+-- Table structure for job_fence
+-- ----------------------------
+DROP TABLE IF EXISTS `job_fence`;
+CREATE TABLE `job_fence`  (
+  `job` varchar(128) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL COMMENT '任务名称',
+  `token` bigint(20) NOT NULL COMMENT '最新的租约令牌',
+  PRIMARY KEY (`job`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8 COLLATE = utf8_bin COMMENT = '集群定时任务令牌' ROW_FORMAT = Dynamic;
+
 -- ----------------------------
 -- Table structure for order_detail
 -- ----------------------------
@@ -124,9 +135,29 @@ CREATE TABLE `order_detail`  (
   `dish_flavor` varchar(50) CHARACTER SET utf8 COLLATE utf8_bin NULL DEFAULT NULL COMMENT '口味',
   `number` int(11) NOT NULL DEFAULT 1 COMMENT '数量',
   `amount` decimal(10, 2) NOT NULL COMMENT '金额',
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `idx_order_id`(`order_id`) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 83 CHARACTER SET = utf8 COLLATE = utf8_bin COMMENT = '订单明细表' ROW_FORMAT = Dynamic;
 
+-- ----------------------------
+-- Table structure for order_daily_stats
+-- ----------------------------
+DROP TABLE IF EXISTS `order_daily_stats`;
+CREATE TABLE `order_daily_stats`  (
+  `stat_date` date NOT NULL COMMENT '日期',
+  `turnover` decimal(12, 2) NOT NULL DEFAULT 0.00 COMMENT '营业额',
+  `order_count` int(11) NOT NULL DEFAULT 0 COMMENT '订单总数',
+  `valid_order_count` int(11) NOT NULL DEFAULT 0 COMMENT '有效订单数',
+  `cancelled_order_count` int(11) NOT NULL DEFAULT 0 COMMENT '已取消订单数',
+  `pending_payment_count` int(11) NOT NULL DEFAULT 0 COMMENT '待付款订单数',
+  `to_be_confirmed_count` int(11) NOT NULL DEFAULT 0 COMMENT '待接单订单数',
+  `confirmed_count` int(11) NOT NULL DEFAULT 0 COMMENT '已接单订单数',
+  `delivery_in_progress_count` int(11) NOT NULL DEFAULT 0 COMMENT '派送中订单数',
+  `new_users` int(11) NOT NULL DEFAULT 0 COMMENT '新增用户数',
+  `update_time` datetime NOT NULL COMMENT '统计时间',
+  PRIMARY KEY (`stat_date`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8 COLLATE = utf8_bin COMMENT = '每日营业数据汇总' ROW_FORMAT = Dynamic;
+
 -- ----------------------------
 -- Table structure for orders
 -- ----------------------------
@@ -156,7 +187,10 @@ CREATE TABLE `orders`  (
   `pack_amount` int(11) NULL DEFAULT NULL COMMENT '打包费',
   `tableware_number` int(11) NULL DEFAULT NULL COMMENT '餐具数量',
   `tableware_status` tinyint(1) NOT NULL DEFAULT 1 COMMENT '餐具数量状态  1按餐量提供  0选择具体数量',
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_number`(`number`) USING BTREE,
+  INDEX `idx_order_time`(`order_time`) USING BTREE,
+  INDEX `idx_status_order_time`(`status`, `order_time`) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 39 CHARACTER SET = utf8 COLLATE = utf8_bin COMMENT = '订单表' ROW_FORMAT = Dynamic;
 
 -- ----------------------------
@@ -224,7 +258,46 @@ CREATE TABLE `user`  (
   `id_number` varchar(18) CHARACTER SET utf8 COLLATE utf8_bin NULL DEFAULT NULL COMMENT '身份证号',
   `avatar` varchar(500) CHARACTER SET utf8 COLLATE utf8_bin NULL DEFAULT NULL COMMENT '头像',
   `create_time` datetime NULL DEFAULT NULL,
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `idx_create_time`(`create_time`) USING BTREE
 ) ENGINE = InnoDB AUTO_INCREMENT = 5 CHARACTER SET = utf8 COLLATE = utf8_bin COMMENT = '用户信息' ROW_FORMAT = Dynamic;
 
 SET FOREIGN_KEY_CHECKS = 1;
+
+-- ----------------------------
+-- 已有数据库升级
+-- 以上建表语句会删除并重建表,已有数据的数据库按需执行以下语句(去掉行首的注释符)
+-- ----------------------------
+-- order_detail: 按订单id批量查询订单明细
+-- ALTER TABLE `order_detail` ADD INDEX `idx_order_id`(`order_id`) USING BTREE;
+-- dish_flavor: 按菜品id批量查询口味
+-- ALTER TABLE `dish_flavor` ADD INDEX `idx_dish_id`(`dish_id` ASC) USING BTREE;
+-- orders: 订单号唯一,添加前先确认没有重复的订单号:
+-- SELECT `number`, COUNT(*) FROM `orders` GROUP BY `number` HAVING COUNT(*) > 1;
+-- ALTER TABLE `orders` ADD UNIQUE INDEX `uk_number`(`number`) USING BTREE;
+-- orders: 定时任务按状态和下单时间分批修改订单
+-- ALTER TABLE `orders` ADD INDEX `idx_status_order_time`(`status`, `order_time`) USING BTREE;
+-- orders, user: 报表按下单时间、注册时间分组统计
+-- ALTER TABLE `orders` ADD INDEX `idx_order_time`(`order_time`) USING BTREE;
+-- ALTER TABLE `user` ADD INDEX `idx_create_time`(`create_time`) USING BTREE;
+-- order_daily_stats: 每日营业数据汇总表,缺少的日期在查询报表时自动统计
+-- CREATE TABLE IF NOT EXISTS `order_daily_stats`  (
+--   `stat_date` date NOT NULL COMMENT '日期',
+--   `turnover` decimal(12, 2) NOT NULL DEFAULT 0.00 COMMENT '营业额',
+--   `order_count` int(11) NOT NULL DEFAULT 0 COMMENT '订单总数',
+--   `valid_order_count` int(11) NOT NULL DEFAULT 0 COMMENT '有效订单数',
+--   `cancelled_order_count` int(11) NOT NULL DEFAULT 0 COMMENT '已取消订单数',
+--   `pending_payment_count` int(11) NOT NULL DEFAULT 0 COMMENT '待付款订单数',
+--   `to_be_confirmed_count` int(11) NOT NULL DEFAULT 0 COMMENT '待接单订单数',
+--   `confirmed_count` int(11) NOT NULL DEFAULT 0 COMMENT '已接单订单数',
+--   `delivery_in_progress_count` int(11) NOT NULL DEFAULT 0 COMMENT '派送中订单数',
+--   `new_users` int(11) NOT NULL DEFAULT 0 COMMENT '新增用户数',
+--   `update_time` datetime NOT NULL COMMENT '统计时间',
+--   PRIMARY KEY (`stat_date`) USING BTREE
+-- ) ENGINE = InnoDB CHARACTER SET = utf8 COLLATE = utf8_bin COMMENT = '每日营业数据汇总' ROW_FORMAT = Dynamic;
+-- job_fence: 集群定时任务令牌
+-- CREATE TABLE IF NOT EXISTS `job_fence`  (
+--   `job` varchar(128) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL COMMENT '任务名称',
+--   `token` bigint(20) NOT NULL COMMENT '最新的租约令牌',
+--   PRIMARY KEY (`job`) USING BTREE
+-- ) ENGINE = InnoDB CHARACTER SET = utf8 COLLATE = utf8_bin COMMENT = '集群定时任务令牌' ROW_FORMAT = Dynamic;